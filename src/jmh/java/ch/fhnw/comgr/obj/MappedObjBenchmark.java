@@ -0,0 +1,57 @@
+package ch.fhnw.comgr.obj;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the sequential {@link Obj} parser with {@link MappedObj} on one thread and on pools of a few sizes.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MappedObjBenchmark {
+    private static final String FILE = "bunny";
+
+    /**
+     * Parallelism of the pool, 0 for all available processors.
+     */
+    @Param({"1", "2", "4", "0"})
+    public int parallelism;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Obj parseObj() {
+        return Obj.parse(FILE);
+    }
+
+    @Benchmark
+    public MappedObj parseMapped() {
+        return MappedObj.parse(FILE);
+    }
+
+    @Benchmark
+    public MappedObj parseMappedPool() {
+        return MappedObj.parse(FILE, pool);
+    }
+}
@@ -0,0 +1,132 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.mesh.BoundingBox;
+import ch.fhnw.comgr.mesh.BoundingSphere;
+import ch.fhnw.comgr.mesh.Bvh;
+import ch.fhnw.comgr.mesh.Frustum;
+import ch.fhnw.comgr.mesh.Lod;
+import ch.fhnw.comgr.mesh.Submesh;
+import ch.fhnw.comgr.vector.Vec3f;
+import ch.fhnw.comgr.vector.Vector3;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that the cpu side of a frame allocates nothing once it's warmed up, run with `gradle allocationCheck`. Does
+ * what the render loop in {@link ch.fhnw.comgr.OpenGL} does per frame without a GL context: the camera matrices,
+ * rotating the objects and moving their bounds in the {@link Bvh}, and the {@link DrawList} of the {@link RenderQueue}
+ * with culling, the sort keys, the levels of detail and filling the instances and commands of the multi-draws. Only
+ * the uploads and draw calls of the queue are left out. Fails if the thread allocated any byte in the measured frames.
+ */
+public final class FrameAllocationCheck {
+    private static final int OBJECTS = 1000;
+    private static final int MESHES = 4;
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 1000;
+
+    private final Mat4f projection = new Mat4f();
+    private final Mat4f view = new Mat4f();
+    private final Mat4f viewProjection = new Mat4f();
+    private final Vec3f eye = new Vec3f(0, 0, -4);
+    private final Vec3f target = new Vec3f(0, 0, 0);
+    private final Vec3f up = new Vec3f(0, 1, 0);
+    private final Vector3 cameraPosition = new Vector3(0, 0, -4);
+
+    private final SceneObject[] objects = new SceneObject[OBJECTS];
+    private final Mat4f[] models = new Mat4f[OBJECTS];
+    private final int[] proxies = new int[OBJECTS];
+    private final Bvh<Integer> bvh = new Bvh<>(0.5f);
+
+    private final Frustum frustum = new Frustum();
+    private final InstanceBuffer instanceBuffer = new InstanceBuffer(new Vbo(0));
+    private final DrawCommands drawCommands = new DrawCommands(true, 0);
+    private final DrawList draws = new DrawList(instanceBuffer, drawCommands);
+    private final Bvh.Visitor<Integer> submit = (proxy, i) -> draws.add(objects[i], models[i], 1, 0);
+
+    private long checksum;
+
+    public static void main(String[] args) {
+        FrameAllocationCheck check = new FrameAllocationCheck();
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++)
+            check.frame(frame * 0.016f);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < FRAMES; frame++)
+            check.frame((WARMUP_FRAMES + frame) * 0.016f);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.println(FRAMES + " frames of " + OBJECTS + " objects allocated " + allocated + " bytes (checksum " + check.checksum + ")");
+        if (allocated != 0)
+            throw new IllegalStateException("the frame loop allocated " + allocated + " bytes in " + FRAMES + " frames");
+    }
+
+    private FrameAllocationCheck() {
+        // instanced programs like where multi-draw indirect is available, the GL names are never used
+        Program program = new Program(1, Map.of(), true);
+        Texture texture = new Texture(1, false);
+        Map<String, Material> materials = Map.of(
+                "plain", new Material(new Vector3(1, 0, 0), null),
+                "textured", new Material(Vector3.ONE, texture));
+
+        BoundingBox box = new BoundingBox(new Vector3(-1, -1, -1), new Vector3(1, 1, 1));
+        BoundingSphere sphere = new BoundingSphere(Vector3.ZERO, (float) Math.sqrt(3));
+        GpuMesh[] meshes = new GpuMesh[MESHES];
+        for (int i = 0; i < MESHES; i++) {
+            MeshArena.Allocation allocation = new MeshArena.Allocation(i, i * 1000, 1000, i * 6000, 6000);
+            meshes[i] = new GpuMesh(null, allocation, List.of(lod(0, 2000), lod(2000, 1000), lod(3000, 500)), sphere, box, Map.of());
+        }
+
+        int side = (int) Math.ceil(Math.cbrt(OBJECTS));
+        for (int i = 0; i < OBJECTS; i++) {
+            Vector3 position = new Vector3((i % side - side / 2) * 2.5f, (i / side % side) * 2.5f, 6 + (i / side / side) * 2.5f);
+            Vector3 color = i % 3 == 0 ? new Vector3(0, 1, 0) : null;
+            objects[i] = new SceneObject(program, meshes[i % MESHES], materials, position, null, color, false);
+            models[i] = new Mat4f().translation(position.x(), position.y(), position.z());
+            proxies[i] = bvh.insert(i, box, models[i]);
+        }
+    }
+
+    /**
+     * A level of detail with a plain and a textured submesh.
+     */
+    private static Lod lod(int firstIndex, int indexCount) {
+        int half = indexCount / 2;
+        return new Lod(firstIndex, indexCount, List.of(
+                new Submesh("plain", firstIndex, half),
+                new Submesh("textured", firstIndex + half, indexCount - half)));
+    }
+
+    private void frame(float time) {
+        float pixelsPerUnit = 720 / (2 * (float) Math.tan(Math.toRadians(90) / 2));
+        projection.perspective((float) Math.toRadians(90), 16f / 9, 0.1f, 100);
+        view.lookAt(eye, target, up);
+        viewProjection.set(view).mul(projection);
+
+        draws.begin(viewProjection, cameraPosition, 100, pixelsPerUnit);
+
+        for (int i = 0; i < OBJECTS; i++) {
+            Vector3 position = objects[i].position();
+            models[i].rotationX((float) -Math.PI / 2)
+                    .rotateY(time + 1f)
+                    .rotateZ(time * 0.5f + 1f)
+                    .translate(position.x(), position.y(), position.z());
+            bvh.move(proxies[i], objects[i].mesh().box(), models[i]);
+        }
+
+        frustum.set(viewProjection);
+        bvh.query(frustum, submit);
+
+        // what RenderQueue.draw does for instanced programs, without the upload and the draw
+        draws.sort();
+        int i = 0;
+        while (i < draws.size()) {
+            i = draws.batch(i);
+            checksum += instanceBuffer.count() + drawCommands.count();
+        }
+    }
+}
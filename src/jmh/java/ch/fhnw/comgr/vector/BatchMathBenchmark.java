@@ -0,0 +1,84 @@
+package ch.fhnw.comgr.vector;
+
+import ch.fhnw.comgr.matrix.Matrix4x4;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Compares the per-record {@link Vector3} path with {@link BatchMath} on the plain loops and on the Vector API.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BatchMathBenchmark {
+    @Param({"1024", "65536"})
+    public int size;
+
+    private final Matrix4x4 matrix = Matrix4x4.multiply(
+            Matrix4x4.createRotationX(0.3f),
+            Matrix4x4.createRotationY(1.1f),
+            Matrix4x4.createTranslation(1, 2, 3));
+    private final BatchOps scalar = new ScalarBatchOps();
+
+    private Vector3[] records;
+    private Vector3Array src;
+    private Vector3Array dest;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        records = new Vector3[size];
+        src = Vector3Array.create(size);
+        dest = Vector3Array.create(size);
+        for (int i = 0; i < size; i++) {
+            records[i] = new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            src.set(i, records[i]);
+        }
+    }
+
+    @Benchmark
+    public void transformRecords(Blackhole blackhole) {
+        for (Vector3 record : records)
+            blackhole.consume(Vector3.transform(record, matrix));
+    }
+
+    @Benchmark
+    public Vector3Array transformScalar() {
+        scalar.transformPositions(matrix, src, dest, 0, size);
+        return dest;
+    }
+
+    @Benchmark
+    public Vector3Array transformSimd() {
+        BatchMath.transformPositions(matrix, src, dest);
+        return dest;
+    }
+
+    @Benchmark
+    public void normalizeRecords(Blackhole blackhole) {
+        for (Vector3 record : records)
+            blackhole.consume(Vector3.normalize(record));
+    }
+
+    @Benchmark
+    public Vector3Array normalizeScalar() {
+        scalar.normalize(src, dest, 0, size);
+        return dest;
+    }
+
+    @Benchmark
+    public Vector3Array normalizeSimd() {
+        BatchMath.normalize(src, dest);
+        return dest;
+    }
+}
@@ -1,18 +1,20 @@
 package ch.fhnw.comgr;
 
-import ch.fhnw.comgr.matrix.Matrix3x3;
-import ch.fhnw.comgr.matrix.Matrix4x4;
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.mesh.Bvh;
+import ch.fhnw.comgr.mesh.Frustum;
 import ch.fhnw.comgr.obj.Obj;
 import ch.fhnw.comgr.opengl.*;
 import ch.fhnw.comgr.texture.CheckerboardTexture;
 import ch.fhnw.comgr.texture.ImageTexture;
+import ch.fhnw.comgr.vector.Vec3f;
 import ch.fhnw.comgr.vector.Vector3;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GLDebugMessageCallback;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 
 import static org.lwjgl.opengl.GL.*;
@@ -29,7 +31,7 @@ import static org.lwjgl.opengl.GL40.*;
 import static org.lwjgl.opengl.GL41.*;
 
 public class OpenGL {
-    private static long setupOpenGl() {
+    private static long setupOpenGl(RenderTargetPool renderTargets) {
         // let GLFW work on the main thread (for macOS)
         // read the following if you want to create windows with awt/swing/javaFX:
         // https://stackoverflow.com/questions/47006058/lwjgl-java-awt-headlessexception-thrown-when-making-a-jframe
@@ -50,7 +52,12 @@ public class OpenGL {
             var h = new int[1];
             GLFW.glfwGetFramebufferSize(window, w, h);
             glViewport(0, 0, w[0], h[0]);
+            renderTargets.resize(w[0], h[0]);
         });
+        var framebufferWidth = new int[1];
+        var framebufferHeight = new int[1];
+        GLFW.glfwGetFramebufferSize(hWindow, framebufferWidth, framebufferHeight);
+        renderTargets.resize(framebufferWidth[0], framebufferHeight[0]);
         GLFW.glfwMakeContextCurrent(hWindow);
         GLFW.glfwSwapInterval(1);
         createCapabilities();
@@ -72,63 +79,72 @@ public class OpenGL {
         glClearColor(0.5f, 0.5f, 0.5f, 0.0f);
 //        glClearColor(1f, 1f, 1f, 0.0f);
 //        glClearDepth(1);
-        glEnable(GL_DEPTH_TEST);
+        GlState.enable(GL_DEPTH_TEST);
 //        glDepthFunc(GL_LESS);
-        glEnable(GL_CULL_FACE);
+        GlState.enable(GL_CULL_FACE);
 //        glCullFace(GL_FRONT);
 
         return hWindow;
     }
 
     public static void main(String[] args) throws Exception {
-        long hWindow = setupOpenGl();
-
-        List<SceneObject> sceneObjects = List.of(
-                SceneObject.create("vertex", "texture_fragment", "cube", new Vector3(.5f, 0, -1), ImageTexture.ofResource("/obj/tree.png")),
-//                SceneObject.create("vertex", "texture_fragment", "cube", new Vector3(-2.5f, 0, 0), new CheckerboardTexture(10, 10, 1, Vector3.BLACK, Vector3.WHITE)),
-                SceneObject.create("vertex", "color_fragment", "cube", new Vector3(-.5f, 0, 3), Vector3.BLUE),
-                SceneObject.create("vertex", "color_fragment", "cube", new Vector3(-1.5f, 2, 3), Vector3.RED),
-                SceneObject.create("vertex", "color_fragment", "cube", new Vector3(1.5f, 2, 3), Vector3.GREEN)
-        );
-
-        for (SceneObject sceneObject : sceneObjects) {
-            sceneObject.setUniform("lightDirection", new Vector3(-1, 1, -1).normalize());
-            sceneObject.setUniform("cameraDirection", new Vector3(0, 0, 1));
+        // offscreen targets are only reallocated when the window size changes
+        RenderTargetPool renderTargets = new RenderTargetPool();
+        long hWindow = setupOpenGl(renderTargets);
+
+        Resources resources = new Resources();
+
+        List<SceneObject> sceneObjects = new ArrayList<>(List.of(
+                SceneObject.create(resources, "vertex", "texture_fragment", "cube", new Vector3(.5f, 0, -1), ImageTexture.ofResource("/obj/tree.png")),
+//                SceneObject.create(resources, "vertex", "texture_fragment", "cube", new Vector3(-2.5f, 0, 0), new CheckerboardTexture(10, 10, 1, Vector3.BLACK, Vector3.WHITE)),
+                // same mesh and program, the render queue draws them with one multi-draw
+                SceneObject.create(resources, "instanced_vertex", "instanced_color_fragment", "cube", new Vector3(-.5f, 0, 3), Vector3.BLUE),
+                SceneObject.create(resources, "instanced_vertex", "instanced_color_fragment", "cube", new Vector3(-1.5f, 2, 3), Vector3.RED),
+                SceneObject.create(resources, "instanced_vertex", "instanced_color_fragment", "cube", new Vector3(1.5f, 2, 3), Vector3.GREEN)
+        ));
+
+        // -Dcomgr.instancedCubes=100000 adds a block of instanced cubes behind the others
+        int instancedCubes = Integer.getInteger("comgr.instancedCubes", 0);
+        int side = (int) Math.ceil(Math.cbrt(instancedCubes));
+        for (int i = 0; i < instancedCubes; i++) {
+            Vector3 position = new Vector3((i % side - side / 2) * 2.5f, (i / side % side) * 2.5f, 6 + (i / side / side) * 2.5f);
+            Vector3 color = new Vector3((i % side) / (float) side, (i / side % side) / (float) side, 1 - (i / side / side) / (float) side);
+            sceneObjects.add(SceneObject.create(resources, "instanced_vertex", "instanced_color_fragment", "cube", position, color));
         }
 
-        SceneObject floor = SceneObject.create("vertex", "texture_fragment", "cube", new Vector3(0, -101, 0), new CheckerboardTexture(5000, 5000, 10, Vector3.BLACK, Vector3.WHITE));
-        floor.setUniform("lightDirection", new Vector3(-1, 1, -1).normalize());
-        floor.setUniform("cameraDirection", new Vector3(0, 0, 1));
+        SceneObject floor = SceneObject.create(resources, "vertex", "texture_fragment", "cube", new Vector3(0, -101, 0), new CheckerboardTexture(5000, 5000, 10, Vector3.BLACK, Vector3.WHITE));
 
         Vector3 cameraPosition = new Vector3(0, 0, -4);
 
-        sceneObjects = sceneObjects.stream()
-                .sorted(Comparator.comparing(sceneObject -> -cameraPosition.subtract(sceneObject.position()).magnitude()))
-                .toList();
+        // camera and light for all shaders, uploaded once per frame
+        FrameUniforms frameUniforms = FrameUniforms.create();
+        frameUniforms.cameraPosition.set(cameraPosition);
+        frameUniforms.cameraDirection.set(0, 0, 1);
+        frameUniforms.lightDirection.set(-1, 1, -1).normalize();
+
+        // sorted again every frame, opaque objects front to back, transparent ones back to front
+        RenderQueue renderQueue = new RenderQueue(resources.instanceBuffer());
 
 //        SceneObject object = SceneObject.create("vertex", "fragment", "cube", "/obj/tree.png");
 
-        glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
-        glEnable(GL_BLEND);
+        GlState.blendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+        GlState.enable(GL_BLEND);
 //        glDisable(GL_CULL_FACE);
-        glDisable(GL_DEPTH_TEST);
-        glDepthMask(true);
+        GlState.disable(GL_DEPTH_TEST);
+        GlState.depthMask(true);
 
         // check for errors during all previous calls
         var error = glGetError();
         if (error != GL_NO_ERROR)
             throw new Exception(Integer.toString(error));
 
-        int[] widthArray = new int[1];
-        int[] heightArray = new int[1];
-
         Program framebufferProgram = Program.create("framebuffer_vertex", "framebuffer_fragment");
 
         int vao = glGenVertexArrays();
-        glBindVertexArray(vao);
+        GlState.bindVertexArray(vao);
 
         int vbo = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        GlState.bindBuffer(GL_ARRAY_BUFFER, vbo);
         glBufferData(GL_ARRAY_BUFFER, new float[] {
                 1.0f,  1.0f, 0.0f,  1.0f, 1.0f,
                 -1.0f,  1.0f, 0.0f,  0.0f, 1.0f,
@@ -148,98 +164,85 @@ public class OpenGL {
             glVertexAttribPointer(attribIndex, 2, GL_FLOAT, false, 5 * Float.BYTES, 3 * Float.BYTES);
         }
 
-        int tex = glGenTextures();
-        int rbo = glGenRenderbuffers();
-        int fbo = glGenFramebuffers();
+        // reused every frame, so the render loop doesn't allocate
+        Mat4f model = new Mat4f();
+        Vec3f eye = new Vec3f(cameraPosition);
+        Vec3f target = new Vec3f(0, 0, 0);
+        Vec3f up = new Vec3f(0, 1, 0);
+
+        RenderTarget sceneTarget = renderTargets.get(new RenderTarget.Format(GL_RGBA8, GL_DEPTH_COMPONENT24));
+
+        // world space bounds of the objects, moved as they rotate, so culling only visits the visible part of the scene
+        Bvh<Integer> sceneBvh = new Bvh<>(0.5f);
+        Mat4f[] models = new Mat4f[sceneObjects.size()];
+        int[] proxies = new int[sceneObjects.size()];
+        for (int i = 0; i < sceneObjects.size(); i++) {
+            Vector3 position = sceneObjects.get(i).position();
+            models[i] = new Mat4f().translation(position.x(), position.y(), position.z());
+            proxies[i] = sceneBvh.insert(i, sceneObjects.get(i).mesh().box(), models[i]);
+        }
+        Frustum frustum = new Frustum();
+        Bvh.Visitor<Integer> submit = (proxy, i) -> renderQueue.add(sceneObjects.get(i), models[i], 1);
 
         // render loop
         var startTime = System.currentTimeMillis();
+        var lastStatsTime = startTime;
         while (!GLFW.glfwWindowShouldClose(hWindow)) {
             float frameTime = (System.currentTimeMillis() - startTime) * 0.001f;
 
-            GLFW.glfwGetWindowSize(hWindow, widthArray, heightArray);
-            int width = widthArray[0];
-            int height = heightArray[0];
+            int width = sceneTarget.width();
+            int height = sceneTarget.height();
 
             // framebuffer
-            glBindTexture(GL_TEXTURE_2D, tex);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+            sceneTarget.bind();
 
-            glBindRenderbuffer(GL_RENDERBUFFER, rbo);
-            glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT, width, height);
+            // clear screen and z-buffer, depth writes may still be off after the transparent objects
+            GlState.depthMask(true);
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-            glBindFramebuffer(GL_FRAMEBUFFER, fbo);
-            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, tex, 0);
-            glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, rbo);
+            float fieldOfView = (float) Math.toRadians(90);
+            float pixelsPerUnit = height / (2 * (float) Math.tan(fieldOfView / 2));
 
-            // clear screen and z-buffer
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+            float farPlaneDistance = 100f;
+            frameUniforms.projection.perspective(fieldOfView, (float) width / height, 0.1f, farPlaneDistance);
+            frameUniforms.view.lookAt(eye, target, up);
+            frameUniforms.viewProjection.set(frameUniforms.view).mul(frameUniforms.projection);
+            frameUniforms.time = frameTime;
+            frameUniforms.upload();
+
+            renderQueue.begin(frameUniforms.viewProjection, cameraPosition, farPlaneDistance, pixelsPerUnit);
 
-            var vp = Matrix4x4.multiply(
-                    Matrix4x4.createPerspectiveFieldOfView(
-                            (float) Math.toRadians(90),
-                            (float) width / height,
-                            0.1f,
-                            100f
-                    ).transpose(),
-                    Matrix4x4.createLookAt(
-                            cameraPosition,
-                            new Vector3(0, 0, 0),
-                            new Vector3(0, 1, 0)
-                    ).transpose()
-            );
-
-            var floorModelMatrix = Matrix4x4.multiply(
-                    Matrix4x4.createTranslation(floor.position()).transpose(),
-                    Matrix4x4.createScale(100).transpose()
-                    );
-            floor.setUniform("mvpMatrix", Matrix4x4.multiply(
-                    vp,
-                    floorModelMatrix
-            ));
-            floor.setUniform("inTime", frameTime);
-            floor.setUniform("normalMatrix", floorModelMatrix.invert().transpose().multiply(floorModelMatrix.getDeterminant()).to3x3());
-            floor.draw();
-
-            for (SceneObject sceneObject : sceneObjects) {
-                var modelMatrix = Matrix4x4.multiply(
-//                    Matrix4x4.createScale(30f).transpose(),
-                        Matrix4x4.createTranslation(sceneObject.position()).transpose(),
-                        Matrix4x4.createRotationZ(frameTime * 0.5f + 1f).transpose(),
-                        Matrix4x4.createRotationY(frameTime + 1f).transpose(),
-//                    Matrix4x4.createTranslation(0.025f, -0.1f, 0f).transpose()
-                        Matrix4x4.createRotationX((float) -Math.PI / 2).transpose()
-                );
-
-                var mvp = Matrix4x4.multiply(
-                        vp,
-                        modelMatrix
-                );
-                Matrix3x3 normalMatrix = modelMatrix.invert().transpose().multiply(modelMatrix.getDeterminant()).to3x3();
-
-                sceneObject.setUniform("mvpMatrix", mvp);
-                sceneObject.setUniform("inTime", frameTime);
-                sceneObject.setUniform("normalMatrix", normalMatrix);
-
-                sceneObject.draw();
+            model.scaling(100).translate(floor.position().x(), floor.position().y(), floor.position().z());
+            renderQueue.add(floor, model, 100);
+
+            for (int i = 0; i < sceneObjects.size(); i++) {
+                SceneObject sceneObject = sceneObjects.get(i);
+                Vector3 position = sceneObject.position();
+                models[i].rotationX((float) -Math.PI / 2)
+                        .rotateY(frameTime + 1f)
+                        .rotateZ(frameTime * 0.5f + 1f)
+                        .translate(position.x(), position.y(), position.z());
+
+                sceneBvh.move(proxies[i], sceneObject.mesh().box(), models[i]);
             }
 
+            frustum.set(frameUniforms.viewProjection);
+            sceneBvh.query(frustum, submit);
+
+            renderQueue.draw();
+
             glBindFramebuffer(GL_FRAMEBUFFER, 0);
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-            glBindVertexArray(vao);
+            GlState.bindVertexArray(vao);
 
-//            glDisable(GL_DEPTH_TEST);  // Disable depth testing for now
-//            glDisable(GL_BLEND);       // Disable blending for now
+            // the render queue leaves depth test and blending set for the last object it drew
+            GlState.disable(GL_DEPTH_TEST);
+            GlState.enable(GL_BLEND);
 
             framebufferProgram.use();
             framebufferProgram.setUniform("imageTexture", 0);
-            glActiveTexture(GL_TEXTURE0);
-            glBindTexture(GL_TEXTURE_2D, tex);
+            GlState.bindTexture(0, sceneTarget.colorTexture());
 
             glDrawArrays(GL_TRIANGLE_FAN, 0, 4);
 
@@ -248,12 +251,21 @@ public class OpenGL {
             // display
             GLFW.glfwSwapBuffers(hWindow);
             GLFW.glfwPollEvents();
+            GlState.endFrame();
+
+            // show the redundant calls the state cache saved, once a second to keep the loop free of allocations
+            if (System.currentTimeMillis() - lastStatsTime >= 1000) {
+                lastStatsTime = System.currentTimeMillis();
+                GLFW.glfwSetWindowTitle(hWindow, "ComGr - " + renderQueue.size() + " visible, " + (sceneObjects.size() + 1 - renderQueue.size()) + " culled, "
+                        + GlState.issuedLastFrame() + " GL state calls, " + GlState.elidedLastFrame() + " elided");
+            }
 
             error = glGetError();
             if (error != GL_NO_ERROR)
                 throw new Exception(Integer.toString(error));
         }
 
+        renderTargets.delete();
         GLFW.glfwDestroyWindow(hWindow);
         GLFW.glfwTerminate();
     }
@@ -11,12 +11,25 @@ import java.util.stream.Collectors;
 
 public record Shader(int shader) {
     public static Shader readFile(String name, int type) {
+        return readFile(name, type, null);
+    }
+
+    /**
+     * Compiles the shader file with the prelude inserted after its #version line, so the prelude can define macros and
+     * functions for the rest of the file.
+     */
+    public static Shader readFile(String name, int type, String prelude) {
         try (
                 InputStream in = Shader.class.getResourceAsStream("/shader/" + name + ".glsl");
                 InputStreamReader inputStreamReader = new InputStreamReader(Objects.requireNonNull(in));
                 BufferedReader reader = new BufferedReader(Objects.requireNonNull(inputStreamReader))
         ) {
             String content = reader.lines().collect(Collectors.joining("\n"));
+            if (prelude != null) {
+                int version = content.indexOf("#version");
+                int lineEnd = content.indexOf('\n', version) + 1;
+                content = content.substring(0, lineEnd) + prelude + "\n" + content.substring(lineEnd);
+            }
 
             int shader = GL20.glCreateShader(type);
             GL20.glShaderSource(shader, content);
@@ -0,0 +1,64 @@
+package ch.fhnw.comgr.matrix;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Mutable counterpart of {@link Matrix3x3}, see {@link Mat4f}.
+ */
+public final class Mat3f {
+    public float m11, m12, m13;
+    public float m21, m22, m23;
+    public float m31, m32, m33;
+
+    public Mat3f() {
+        identity();
+    }
+
+    public Mat3f(Matrix3x3 m) {
+        set(m);
+    }
+
+    public Mat3f identity() {
+        return set(1, 0, 0, 0, 1, 0, 0, 0, 1);
+    }
+
+    public Mat3f set(float m11, float m12, float m13,
+                     float m21, float m22, float m23,
+                     float m31, float m32, float m33) {
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m13 = m13;
+        this.m21 = m21;
+        this.m22 = m22;
+        this.m23 = m23;
+        this.m31 = m31;
+        this.m32 = m32;
+        this.m33 = m33;
+        return this;
+    }
+
+    public Mat3f set(Matrix3x3 m) {
+        return set(m.m11(), m.m12(), m.m13(), m.m21(), m.m22(), m.m23(), m.m31(), m.m32(), m.m33());
+    }
+
+    public Matrix3x3 toMatrix3x3() {
+        return new Matrix3x3(m11, m12, m13, m21, m22, m23, m31, m32, m33);
+    }
+
+    /**
+     * Writes the matrix in the order of {@link Matrix3x3#toArray()} at the position of the buffer. The position is not
+     * changed, so the buffer can be handed to the glUniform functions right away.
+     */
+    public FloatBuffer get(FloatBuffer buffer) {
+        int p = buffer.position();
+        buffer.put(p, m11).put(p + 1, m12).put(p + 2, m13)
+                .put(p + 3, m21).put(p + 4, m22).put(p + 5, m23)
+                .put(p + 6, m31).put(p + 7, m32).put(p + 8, m33);
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return "Mat3f[" + m11 + ", " + m12 + ", " + m13 + ", " + m21 + ", " + m22 + ", " + m23 + ", " + m31 + ", " + m32 + ", " + m33 + "]";
+    }
+}
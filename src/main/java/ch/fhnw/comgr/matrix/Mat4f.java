@@ -0,0 +1,458 @@
+package ch.fhnw.comgr.matrix;
+
+import ch.fhnw.comgr.vector.Vec3f;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Mutable counterpart of {@link Matrix4x4} for code that runs every frame. It uses the same layout and conventions
+ * (row vectors, the translation is in the fourth row), all operations work in place and return this matrix for
+ * chaining, nothing allocates.
+ * <p>
+ * The {@code rotateX}, {@code translate}, ... operations multiply from the right: {@code m.rotateY(r)} is
+ * {@code m = m * Matrix4x4.createRotationY(r)}, so a chain applies the transformations to a row vector from left to
+ * right.
+ */
+public final class Mat4f {
+    public float m11, m12, m13, m14;
+    public float m21, m22, m23, m24;
+    public float m31, m32, m33, m34;
+    public float m41, m42, m43, m44;
+
+    public Mat4f() {
+        identity();
+    }
+
+    public Mat4f(Matrix4x4 m) {
+        set(m);
+    }
+
+    public Mat4f identity() {
+        return set(
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1);
+    }
+
+    public Mat4f set(float m11, float m12, float m13, float m14,
+                     float m21, float m22, float m23, float m24,
+                     float m31, float m32, float m33, float m34,
+                     float m41, float m42, float m43, float m44) {
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m13 = m13;
+        this.m14 = m14;
+        this.m21 = m21;
+        this.m22 = m22;
+        this.m23 = m23;
+        this.m24 = m24;
+        this.m31 = m31;
+        this.m32 = m32;
+        this.m33 = m33;
+        this.m34 = m34;
+        this.m41 = m41;
+        this.m42 = m42;
+        this.m43 = m43;
+        this.m44 = m44;
+        return this;
+    }
+
+    public Mat4f set(Mat4f m) {
+        return set(
+                m.m11, m.m12, m.m13, m.m14,
+                m.m21, m.m22, m.m23, m.m24,
+                m.m31, m.m32, m.m33, m.m34,
+                m.m41, m.m42, m.m43, m.m44);
+    }
+
+    public Mat4f set(Matrix4x4 m) {
+        return set(
+                m.m11(), m.m12(), m.m13(), m.m14(),
+                m.m21(), m.m22(), m.m23(), m.m24(),
+                m.m31(), m.m32(), m.m33(), m.m34(),
+                m.m41(), m.m42(), m.m43(), m.m44());
+    }
+
+    public Matrix4x4 toMatrix4x4() {
+        return new Matrix4x4(
+                m11, m12, m13, m14,
+                m21, m22, m23, m24,
+                m31, m32, m33, m34,
+                m41, m42, m43, m44);
+    }
+
+    public Mat4f translation(float x, float y, float z) {
+        return set(
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                x, y, z, 1);
+    }
+
+    public Mat4f scaling(float scale) {
+        return scaling(scale, scale, scale);
+    }
+
+    public Mat4f scaling(float x, float y, float z) {
+        return set(
+                x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0,
+                0, 0, 0, 1);
+    }
+
+    public Mat4f rotationX(float radians) {
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        return set(
+                1, 0, 0, 0,
+                0, c, s, 0,
+                0, -s, c, 0,
+                0, 0, 0, 1);
+    }
+
+    public Mat4f rotationY(float radians) {
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        return set(
+                c, 0, -s, 0,
+                0, 1, 0, 0,
+                s, 0, c, 0,
+                0, 0, 0, 1);
+    }
+
+    public Mat4f rotationZ(float radians) {
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        return set(
+                c, s, 0, 0,
+                -s, c, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1);
+    }
+
+    /**
+     * Same as {@link Matrix4x4#createPerspectiveFieldOfView}.
+     */
+    public Mat4f perspective(float fieldOfView, float aspectRatio, float nearPlaneDistance, float farPlaneDistance) {
+        if (fieldOfView <= 0 || fieldOfView >= Math.PI || nearPlaneDistance <= 0 || farPlaneDistance <= 0 || nearPlaneDistance >= farPlaneDistance)
+            throw new IllegalArgumentException();
+
+        float yScale = 1f / (float) Math.tan(fieldOfView * 0.5);
+        float xScale = yScale / aspectRatio;
+        float negFarRange = farPlaneDistance / (nearPlaneDistance - farPlaneDistance);
+
+        return set(
+                xScale, 0, 0, 0,
+                0, yScale, 0, 0,
+                0, 0, negFarRange, -1,
+                0, 0, nearPlaneDistance * negFarRange, 0);
+    }
+
+    /**
+     * Same as {@link Matrix4x4#createLookAt}.
+     */
+    public Mat4f lookAt(Vec3f cameraPosition, Vec3f cameraTarget, Vec3f cameraUpVector) {
+        float zx = cameraPosition.x - cameraTarget.x;
+        float zy = cameraPosition.y - cameraTarget.y;
+        float zz = cameraPosition.z - cameraTarget.z;
+        float zLength = (float) Math.sqrt(zx * zx + zy * zy + zz * zz);
+        zx /= zLength;
+        zy /= zLength;
+        zz /= zLength;
+
+        float xx = cameraUpVector.y * zz - cameraUpVector.z * zy;
+        float xy = cameraUpVector.z * zx - cameraUpVector.x * zz;
+        float xz = cameraUpVector.x * zy - cameraUpVector.y * zx;
+        float xLength = (float) Math.sqrt(xx * xx + xy * xy + xz * xz);
+        xx /= xLength;
+        xy /= xLength;
+        xz /= xLength;
+
+        float yx = zy * xz - zz * xy;
+        float yy = zz * xx - zx * xz;
+        float yz = zx * xy - zy * xx;
+
+        return set(
+                xx, yx, zx, 0,
+                xy, yy, zy, 0,
+                xz, yz, zz, 0,
+                -(xx * cameraPosition.x + xy * cameraPosition.y + xz * cameraPosition.z),
+                -(yx * cameraPosition.x + yy * cameraPosition.y + yz * cameraPosition.z),
+                -(zx * cameraPosition.x + zy * cameraPosition.y + zz * cameraPosition.z),
+                1);
+    }
+
+    /**
+     * Sets this matrix to this * b.
+     */
+    public Mat4f mul(Mat4f b) {
+        return mul(this, b);
+    }
+
+    /**
+     * Sets this matrix to a * b, either of them may be this matrix.
+     */
+    public Mat4f mul(Mat4f a, Mat4f b) {
+        return set(
+                a.m11 * b.m11 + a.m12 * b.m21 + a.m13 * b.m31 + a.m14 * b.m41,
+                a.m11 * b.m12 + a.m12 * b.m22 + a.m13 * b.m32 + a.m14 * b.m42,
+                a.m11 * b.m13 + a.m12 * b.m23 + a.m13 * b.m33 + a.m14 * b.m43,
+                a.m11 * b.m14 + a.m12 * b.m24 + a.m13 * b.m34 + a.m14 * b.m44,
+
+                a.m21 * b.m11 + a.m22 * b.m21 + a.m23 * b.m31 + a.m24 * b.m41,
+                a.m21 * b.m12 + a.m22 * b.m22 + a.m23 * b.m32 + a.m24 * b.m42,
+                a.m21 * b.m13 + a.m22 * b.m23 + a.m23 * b.m33 + a.m24 * b.m43,
+                a.m21 * b.m14 + a.m22 * b.m24 + a.m23 * b.m34 + a.m24 * b.m44,
+
+                a.m31 * b.m11 + a.m32 * b.m21 + a.m33 * b.m31 + a.m34 * b.m41,
+                a.m31 * b.m12 + a.m32 * b.m22 + a.m33 * b.m32 + a.m34 * b.m42,
+                a.m31 * b.m13 + a.m32 * b.m23 + a.m33 * b.m33 + a.m34 * b.m43,
+                a.m31 * b.m14 + a.m32 * b.m24 + a.m33 * b.m34 + a.m34 * b.m44,
+
+                a.m41 * b.m11 + a.m42 * b.m21 + a.m43 * b.m31 + a.m44 * b.m41,
+                a.m41 * b.m12 + a.m42 * b.m22 + a.m43 * b.m32 + a.m44 * b.m42,
+                a.m41 * b.m13 + a.m42 * b.m23 + a.m43 * b.m33 + a.m44 * b.m43,
+                a.m41 * b.m14 + a.m42 * b.m24 + a.m43 * b.m34 + a.m44 * b.m44);
+    }
+
+    public Mat4f translate(float x, float y, float z) {
+        m11 += m14 * x;
+        m12 += m14 * y;
+        m13 += m14 * z;
+        m21 += m24 * x;
+        m22 += m24 * y;
+        m23 += m24 * z;
+        m31 += m34 * x;
+        m32 += m34 * y;
+        m33 += m34 * z;
+        m41 += m44 * x;
+        m42 += m44 * y;
+        m43 += m44 * z;
+        return this;
+    }
+
+    public Mat4f scale(float x, float y, float z) {
+        m11 *= x;
+        m21 *= x;
+        m31 *= x;
+        m41 *= x;
+        m12 *= y;
+        m22 *= y;
+        m32 *= y;
+        m42 *= y;
+        m13 *= z;
+        m23 *= z;
+        m33 *= z;
+        m43 *= z;
+        return this;
+    }
+
+    public Mat4f rotateX(float radians) {
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float t;
+        t = m12;
+        m12 = t * c - m13 * s;
+        m13 = t * s + m13 * c;
+        t = m22;
+        m22 = t * c - m23 * s;
+        m23 = t * s + m23 * c;
+        t = m32;
+        m32 = t * c - m33 * s;
+        m33 = t * s + m33 * c;
+        t = m42;
+        m42 = t * c - m43 * s;
+        m43 = t * s + m43 * c;
+        return this;
+    }
+
+    public Mat4f rotateY(float radians) {
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float t;
+        t = m11;
+        m11 = t * c + m13 * s;
+        m13 = -t * s + m13 * c;
+        t = m21;
+        m21 = t * c + m23 * s;
+        m23 = -t * s + m23 * c;
+        t = m31;
+        m31 = t * c + m33 * s;
+        m33 = -t * s + m33 * c;
+        t = m41;
+        m41 = t * c + m43 * s;
+        m43 = -t * s + m43 * c;
+        return this;
+    }
+
+    public Mat4f rotateZ(float radians) {
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float t;
+        t = m11;
+        m11 = t * c - m12 * s;
+        m12 = t * s + m12 * c;
+        t = m21;
+        m21 = t * c - m22 * s;
+        m22 = t * s + m22 * c;
+        t = m31;
+        m31 = t * c - m32 * s;
+        m32 = t * s + m32 * c;
+        t = m41;
+        m41 = t * c - m42 * s;
+        m42 = t * s + m42 * c;
+        return this;
+    }
+
+    public Mat4f transpose() {
+        return set(
+                m11, m21, m31, m41,
+                m12, m22, m32, m42,
+                m13, m23, m33, m43,
+                m14, m24, m34, m44);
+    }
+
+    public float determinant() {
+        float kp_lo = m33 * m44 - m34 * m43;
+        float jp_ln = m32 * m44 - m34 * m42;
+        float jo_kn = m32 * m43 - m33 * m42;
+        float ip_lm = m31 * m44 - m34 * m41;
+        float io_km = m31 * m43 - m33 * m41;
+        float in_jm = m31 * m42 - m32 * m41;
+
+        return m11 * (m22 * kp_lo - m23 * jp_ln + m24 * jo_kn) -
+                m12 * (m21 * kp_lo - m23 * ip_lm + m24 * io_km) +
+                m13 * (m21 * jp_ln - m22 * ip_lm + m24 * in_jm) -
+                m14 * (m21 * jo_kn - m22 * io_km + m23 * in_jm);
+    }
+
+    /**
+     * Inverts this matrix, see {@link Matrix4x4#invert(Matrix4x4)}. Returns null and leaves the matrix unchanged if it
+     * is singular.
+     */
+    public Mat4f invert() {
+        float a = m11, b = m12, c = m13, d = m14;
+        float e = m21, f = m22, g = m23, h = m24;
+        float i = m31, j = m32, k = m33, l = m34;
+        float m = m41, n = m42, o = m43, p = m44;
+
+        float kp_lo = k * p - l * o;
+        float jp_ln = j * p - l * n;
+        float jo_kn = j * o - k * n;
+        float ip_lm = i * p - l * m;
+        float io_km = i * o - k * m;
+        float in_jm = i * n - j * m;
+
+        float a11 = +(f * kp_lo - g * jp_ln + h * jo_kn);
+        float a12 = -(e * kp_lo - g * ip_lm + h * io_km);
+        float a13 = +(e * jp_ln - f * ip_lm + h * in_jm);
+        float a14 = -(e * jo_kn - f * io_km + g * in_jm);
+
+        float det = a * a11 + b * a12 + c * a13 + d * a14;
+
+        if (Math.abs(det) < 1e-10)
+            return null;
+
+        float invDet = 1.0f / det;
+
+        float gp_ho = g * p - h * o;
+        float fp_hn = f * p - h * n;
+        float fo_gn = f * o - g * n;
+        float ep_hm = e * p - h * m;
+        float eo_gm = e * o - g * m;
+        float en_fm = e * n - f * m;
+
+        float gl_hk = g * l - h * k;
+        float fl_hj = f * l - h * j;
+        float fk_gj = f * k - g * j;
+        float el_hi = e * l - h * i;
+        float ek_gi = e * k - g * i;
+        float ej_fi = e * j - f * i;
+
+        return set(
+                a11 * invDet,
+                -(b * kp_lo - c * jp_ln + d * jo_kn) * invDet,
+                +(b * gp_ho - c * fp_hn + d * fo_gn) * invDet,
+                -(b * gl_hk - c * fl_hj + d * fk_gj) * invDet,
+                a12 * invDet,
+                +(a * kp_lo - c * ip_lm + d * io_km) * invDet,
+                -(a * gp_ho - c * ep_hm + d * eo_gm) * invDet,
+                +(a * gl_hk - c * el_hi + d * ek_gi) * invDet,
+                a13 * invDet,
+                -(a * jp_ln - b * ip_lm + d * in_jm) * invDet,
+                +(a * fp_hn - b * ep_hm + d * en_fm) * invDet,
+                -(a * fl_hj - b * el_hi + d * ej_fi) * invDet,
+                a14 * invDet,
+                +(a * jo_kn - b * io_km + c * in_jm) * invDet,
+                -(a * fo_gn - b * eo_gm + c * en_fm) * invDet,
+                +(a * fk_gj - b * ek_gi + c * ej_fi) * invDet);
+    }
+
+    /**
+     * Inverts this matrix assuming it is affine (the fourth column is 0, 0, 0, 1), which is much cheaper than
+     * {@link #invert()}. Returns null and leaves the matrix unchanged if it is singular.
+     */
+    public Mat4f invertAffine() {
+        float c11 = m22 * m33 - m23 * m32;
+        float c12 = m23 * m31 - m21 * m33;
+        float c13 = m21 * m32 - m22 * m31;
+        float det = m11 * c11 + m12 * c12 + m13 * c13;
+
+        if (Math.abs(det) < 1e-10)
+            return null;
+
+        float invDet = 1.0f / det;
+
+        float i11 = c11 * invDet;
+        float i12 = (m13 * m32 - m12 * m33) * invDet;
+        float i13 = (m12 * m23 - m13 * m22) * invDet;
+        float i21 = c12 * invDet;
+        float i22 = (m11 * m33 - m13 * m31) * invDet;
+        float i23 = (m13 * m21 - m11 * m23) * invDet;
+        float i31 = c13 * invDet;
+        float i32 = (m12 * m31 - m11 * m32) * invDet;
+        float i33 = (m11 * m22 - m12 * m21) * invDet;
+
+        // the translation of the inverse is -t * R^-1
+        return set(
+                i11, i12, i13, 0,
+                i21, i22, i23, 0,
+                i31, i32, i33, 0,
+                -(m41 * i11 + m42 * i21 + m43 * i31),
+                -(m41 * i12 + m42 * i22 + m43 * i32),
+                -(m41 * i13 + m42 * i23 + m43 * i33),
+                1);
+    }
+
+    /**
+     * Stores the adjugate of the upper 3x3 matrix in dest, which is the inverse transpose scaled by the determinant.
+     * For an affine model matrix in this layout, that's the normal matrix the shaders expect after transposing the
+     * model matrix for OpenGL, the same as {@code modelMatrix.transpose().invert().transpose().multiply(det).to3x3()}.
+     */
+    public Mat3f adjugate3x3(Mat3f dest) {
+        return dest.set(
+                m22 * m33 - m23 * m32, m13 * m32 - m12 * m33, m12 * m23 - m13 * m22,
+                m23 * m31 - m21 * m33, m11 * m33 - m13 * m31, m13 * m21 - m11 * m23,
+                m21 * m32 - m22 * m31, m12 * m31 - m11 * m32, m11 * m22 - m12 * m21);
+    }
+
+    /**
+     * Writes the matrix in the order of {@link Matrix4x4#toArray()} at the position of the buffer. The position is not
+     * changed, so the buffer can be handed to the glUniform functions right away.
+     */
+    public FloatBuffer get(FloatBuffer buffer) {
+        int p = buffer.position();
+        buffer.put(p, m11).put(p + 1, m12).put(p + 2, m13).put(p + 3, m14)
+                .put(p + 4, m21).put(p + 5, m22).put(p + 6, m23).put(p + 7, m24)
+                .put(p + 8, m31).put(p + 9, m32).put(p + 10, m33).put(p + 11, m34)
+                .put(p + 12, m41).put(p + 13, m42).put(p + 14, m43).put(p + 15, m44);
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix4x4().toString().replace("Matrix4x4", "Mat4f");
+    }
+}
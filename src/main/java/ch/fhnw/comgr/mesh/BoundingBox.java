@@ -0,0 +1,28 @@
+package ch.fhnw.comgr.mesh;
+
+import ch.fhnw.comgr.vector.Vector3;
+
+/**
+ * Axis aligned box around the vertices of a mesh in model space.
+ */
+public record BoundingBox(Vector3 min, Vector3 max) {
+    /**
+     * Positions are the first three floats of every vertex, see {@link BoundingSphere#of(float[], int)}.
+     */
+    public static BoundingBox of(float[] vertices, int vertexSize) {
+        if (vertices.length < vertexSize)
+            return new BoundingBox(Vector3.ZERO, Vector3.ZERO);
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int offset = 0; offset + vertexSize <= vertices.length; offset += vertexSize) {
+            minX = Math.min(minX, vertices[offset]);
+            minY = Math.min(minY, vertices[offset + 1]);
+            minZ = Math.min(minZ, vertices[offset + 2]);
+            maxX = Math.max(maxX, vertices[offset]);
+            maxY = Math.max(maxY, vertices[offset + 1]);
+            maxZ = Math.max(maxZ, vertices[offset + 2]);
+        }
+        return new BoundingBox(new Vector3(minX, minY, minZ), new Vector3(maxX, maxY, maxZ));
+    }
+}
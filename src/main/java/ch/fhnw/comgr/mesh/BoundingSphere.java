@@ -0,0 +1,92 @@
+package ch.fhnw.comgr.mesh;
+
+import ch.fhnw.comgr.vector.Vector3;
+
+public record BoundingSphere(Vector3 center, float radius) {
+    /**
+     * Approximates the minimal sphere around the vertices with the smaller of Ritter's sphere and the sphere around the
+     * center of the bounding box. Positions are the first three floats of every vertex.
+     */
+    public static BoundingSphere of(float[] vertices, int vertexSize) {
+        if (vertices.length < vertexSize)
+            return new BoundingSphere(Vector3.ZERO, 0);
+
+        BoundingSphere ritter = ritter(vertices, vertexSize);
+        BoundingSphere box = box(vertices, vertexSize);
+        return ritter.radius <= box.radius ? ritter : box;
+    }
+
+    private static BoundingSphere box(float[] vertices, int vertexSize) {
+        float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+        float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int offset = 0; offset + vertexSize <= vertices.length; offset += vertexSize) {
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], vertices[offset + axis]);
+                max[axis] = Math.max(max[axis], vertices[offset + axis]);
+            }
+        }
+
+        float[] center = {(min[0] + max[0]) / 2, (min[1] + max[1]) / 2, (min[2] + max[2]) / 2};
+        float radiusSquared = 0;
+        for (int offset = 0; offset + vertexSize <= vertices.length; offset += vertexSize)
+            radiusSquared = Math.max(radiusSquared, distanceSquared(vertices, offset, center, 0));
+
+        return new BoundingSphere(new Vector3(center[0], center[1], center[2]), (float) Math.sqrt(radiusSquared));
+    }
+
+    private static BoundingSphere ritter(float[] vertices, int vertexSize) {
+        int vertexCount = vertices.length / vertexSize;
+
+        // start with the two points farthest apart along any axis
+        int[] min = new int[3];
+        int[] max = new int[3];
+        for (int i = 0; i < vertexCount; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (vertices[i * vertexSize + axis] < vertices[min[axis] * vertexSize + axis])
+                    min[axis] = i;
+                if (vertices[i * vertexSize + axis] > vertices[max[axis] * vertexSize + axis])
+                    max[axis] = i;
+            }
+        }
+
+        int a = 0;
+        int b = 0;
+        float widest = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            float distance = distanceSquared(vertices, min[axis] * vertexSize, vertices, max[axis] * vertexSize);
+            if (distance > widest) {
+                widest = distance;
+                a = min[axis];
+                b = max[axis];
+            }
+        }
+
+        float[] center = {
+                (vertices[a * vertexSize] + vertices[b * vertexSize]) / 2,
+                (vertices[a * vertexSize + 1] + vertices[b * vertexSize + 1]) / 2,
+                (vertices[a * vertexSize + 2] + vertices[b * vertexSize + 2]) / 2
+        };
+        float radius = (float) Math.sqrt(widest) / 2;
+
+        // grow the sphere just enough to include every point outside
+        for (int i = 0; i < vertexCount; i++) {
+            float distance = (float) Math.sqrt(distanceSquared(vertices, i * vertexSize, center, 0));
+            if (distance > radius) {
+                float newRadius = (radius + distance) / 2;
+                float shift = (newRadius - radius) / distance;
+                for (int axis = 0; axis < 3; axis++)
+                    center[axis] += (vertices[i * vertexSize + axis] - center[axis]) * shift;
+                radius = newRadius;
+            }
+        }
+
+        return new BoundingSphere(new Vector3(center[0], center[1], center[2]), radius);
+    }
+
+    private static float distanceSquared(float[] a, int aOffset, float[] b, int bOffset) {
+        float dx = a[aOffset] - b[bOffset];
+        float dy = a[aOffset + 1] - b[bOffset + 1];
+        float dz = a[aOffset + 2] - b[bOffset + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
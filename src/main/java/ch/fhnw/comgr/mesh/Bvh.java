@@ -0,0 +1,469 @@
+package ch.fhnw.comgr.mesh;
+
+import ch.fhnw.comgr.matrix.Mat4f;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic bounding volume hierarchy over world space boxes, for culling, picking and neighbourhood queries that don't
+ * have to look at every object. Each value gets a leaf whose box is enlarged by a margin, so objects moving a little
+ * stay inside their leaf and {@link #move} costs a containment test. Leaves are inserted next to the sibling that grows
+ * the surface area least and the tree is kept balanced with rotations (as in Box2D's dynamic tree).
+ * <p>
+ * Nodes live in arrays indexed by node and are recycled through a free list, the queries don't allocate. Leaves are
+ * identified by the proxy returned from {@link #insert}, which stays the same until the leaf is removed.
+ */
+public final class Bvh<T> {
+    public static final int NULL = -1;
+
+    private static final int BOX_SIZE = 6;
+
+    @FunctionalInterface
+    public interface Visitor<T> {
+        void visit(int proxy, T value);
+    }
+
+    @FunctionalInterface
+    public interface RayVisitor<T> {
+        /**
+         * @return the new maximum distance along the ray, the distance of a hit to only look for closer ones, or a
+         * negative value to stop
+         */
+        float visit(int proxy, T value, float maxDistance);
+    }
+
+    private final float margin;
+
+    // min x, y, z and max x, y, z of every node next to each other, the queries read them together
+    private float[] boxes;
+    private int[] parent, child1, child2, height;
+    private Object[] values;
+
+    private int root = NULL;
+    private int freeList = NULL;
+    private int leafCount;
+
+    private int[] stack = new int[64];
+
+    /**
+     * @param margin distance the leaf boxes are enlarged by on every side
+     */
+    public Bvh(float margin) {
+        this.margin = margin;
+        allocateArrays(16);
+    }
+
+    public int leafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Height of the tree, 0 for a single leaf and -1 if it's empty.
+     */
+    public int height() {
+        return root == NULL ? -1 : height[root];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int proxy) {
+        return (T) values[proxy];
+    }
+
+    public int insert(T value, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int leaf = allocateNode();
+        setFatBox(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+        values[leaf] = value;
+        insertLeaf(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    /**
+     * Inserts the value with the box around the transformed bounding box.
+     */
+    public int insert(T value, BoundingBox box, Mat4f model) {
+        int leaf = insert(value, 0, 0, 0, 0, 0, 0);
+        move(leaf, box, model);
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+    }
+
+    /**
+     * Updates the box of a leaf. Nothing changes while the box stays inside the enlarged box of the leaf, otherwise the
+     * leaf is inserted again.
+     *
+     * @return whether the leaf was inserted again
+     */
+    public boolean move(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int box = proxy * BOX_SIZE;
+        if (boxes[box] <= minX && boxes[box + 1] <= minY && boxes[box + 2] <= minZ
+                && boxes[box + 3] >= maxX && boxes[box + 4] >= maxY && boxes[box + 5] >= maxZ)
+            return false;
+
+        removeLeaf(proxy);
+        setFatBox(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    /**
+     * Moves the leaf to the box around the transformed bounding box, see {@link #move(int, float, float, float, float,
+     * float, float)}.
+     */
+    public boolean move(int proxy, BoundingBox box, Mat4f model) {
+        float cx = (box.min().x() + box.max().x()) / 2, cy = (box.min().y() + box.max().y()) / 2, cz = (box.min().z() + box.max().z()) / 2;
+        float ex = (box.max().x() - box.min().x()) / 2, ey = (box.max().y() - box.min().y()) / 2, ez = (box.max().z() - box.min().z()) / 2;
+
+        // box around the transformed box (Arvo), rows 1 to 3 are the transformed axes
+        float x = cx * model.m11 + cy * model.m21 + cz * model.m31 + model.m41;
+        float y = cx * model.m12 + cy * model.m22 + cz * model.m32 + model.m42;
+        float z = cx * model.m13 + cy * model.m23 + cz * model.m33 + model.m43;
+        float extentX = Math.abs(model.m11) * ex + Math.abs(model.m21) * ey + Math.abs(model.m31) * ez;
+        float extentY = Math.abs(model.m12) * ex + Math.abs(model.m22) * ey + Math.abs(model.m32) * ez;
+        float extentZ = Math.abs(model.m13) * ex + Math.abs(model.m23) * ey + Math.abs(model.m33) * ez;
+
+        return move(proxy, x - extentX, y - extentY, z - extentZ, x + extentX, y + extentY, z + extentZ);
+    }
+
+    /**
+     * Sets the box of a leaf and refits the boxes of its ancestors without changing the structure of the tree. Cheaper
+     * than {@link #move} for small movements, but the tree gets worse the further leaves move away from where they
+     * were inserted.
+     */
+    public void refit(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        setFatBox(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        for (int node = parent[proxy]; node != NULL; node = parent[node])
+            setUnion(node, child1[node], child2[node]);
+    }
+
+    /**
+     * Visits the leaves whose box intersects the frustum. Subtrees completely inside the frustum are visited without
+     * testing them any further.
+     */
+    public void query(Frustum frustum, Visitor<T> visitor) {
+        if (root == NULL)
+            return;
+
+        // entries of subtrees known to be inside are stored as ~node
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int entry = stack[--top];
+            int node = entry < 0 ? ~entry : entry;
+
+            if (entry >= 0) {
+                int box = node * BOX_SIZE;
+                int classification = frustum.classifyBox(boxes[box], boxes[box + 1], boxes[box + 2], boxes[box + 3], boxes[box + 4], boxes[box + 5]);
+                if (classification == Frustum.OUTSIDE)
+                    continue;
+                if (classification == Frustum.INSIDE)
+                    entry = ~node;
+            }
+
+            if (isLeaf(node)) {
+                visitor.visit(node, get(node));
+            } else {
+                top = push(top, entry < 0 ? ~child1[node] : child1[node]);
+                top = push(top, entry < 0 ? ~child2[node] : child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Visits the leaves whose box intersects the sphere.
+     */
+    public void query(float x, float y, float z, float radius, Visitor<T> visitor) {
+        if (root == NULL)
+            return;
+
+        float radiusSquared = radius * radius;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+
+            // squared distance from the center to the closest point of the box
+            int box = node * BOX_SIZE;
+            float dx = Math.max(Math.max(boxes[box] - x, x - boxes[box + 3]), 0);
+            float dy = Math.max(Math.max(boxes[box + 1] - y, y - boxes[box + 4]), 0);
+            float dz = Math.max(Math.max(boxes[box + 2] - z, z - boxes[box + 5]), 0);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared)
+                continue;
+
+            if (isLeaf(node)) {
+                visitor.visit(node, get(node));
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Visits the leaves whose box the ray hits within the maximum distance, the visitor can shorten the ray to find the
+     * closest hit. The direction doesn't have to be normalized, distances are in multiples of it.
+     */
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                        float maxDistance, RayVisitor<T> visitor) {
+        if (root == NULL)
+            return;
+
+        float inverseX = 1 / directionX, inverseY = 1 / directionY, inverseZ = 1 / directionZ;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+
+            // slab test, infinities from zero direction components compare correctly
+            int box = node * BOX_SIZE;
+            float x1 = (boxes[box] - originX) * inverseX, x2 = (boxes[box + 3] - originX) * inverseX;
+            float y1 = (boxes[box + 1] - originY) * inverseY, y2 = (boxes[box + 4] - originY) * inverseY;
+            float z1 = (boxes[box + 2] - originZ) * inverseZ, z2 = (boxes[box + 5] - originZ) * inverseZ;
+            float near = Math.max(Math.max(Math.min(x1, x2), Math.min(y1, y2)), Math.max(Math.min(z1, z2), 0));
+            float far = Math.min(Math.min(Math.max(x1, x2), Math.max(y1, y2)), Math.min(Math.max(z1, z2), maxDistance));
+            if (near > far)
+                continue;
+
+            if (isLeaf(node)) {
+                maxDistance = visitor.visit(node, get(node), maxDistance);
+                if (maxDistance < 0)
+                    return;
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    private boolean isLeaf(int node) {
+        return child1[node] == NULL;
+    }
+
+    private int push(int top, int entry) {
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[top] = entry;
+        return top + 1;
+    }
+
+    private void setFatBox(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int box = node * BOX_SIZE;
+        boxes[box] = minX - margin;
+        boxes[box + 1] = minY - margin;
+        boxes[box + 2] = minZ - margin;
+        boxes[box + 3] = maxX + margin;
+        boxes[box + 4] = maxY + margin;
+        boxes[box + 5] = maxZ + margin;
+    }
+
+    private void setUnion(int node, int a, int b) {
+        int box = node * BOX_SIZE, boxA = a * BOX_SIZE, boxB = b * BOX_SIZE;
+        for (int i = 0; i < 3; i++) {
+            boxes[box + i] = Math.min(boxes[boxA + i], boxes[boxB + i]);
+            boxes[box + 3 + i] = Math.max(boxes[boxA + 3 + i], boxes[boxB + 3 + i]);
+        }
+    }
+
+    private float area(int node) {
+        int box = node * BOX_SIZE;
+        float dx = boxes[box + 3] - boxes[box], dy = boxes[box + 4] - boxes[box + 1], dz = boxes[box + 5] - boxes[box + 2];
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private float unionArea(int a, int b) {
+        int boxA = a * BOX_SIZE, boxB = b * BOX_SIZE;
+        float dx = Math.max(boxes[boxA + 3], boxes[boxB + 3]) - Math.min(boxes[boxA], boxes[boxB]);
+        float dy = Math.max(boxes[boxA + 4], boxes[boxB + 4]) - Math.min(boxes[boxA + 1], boxes[boxB + 1]);
+        float dz = Math.max(boxes[boxA + 5], boxes[boxB + 5]) - Math.min(boxes[boxA + 2], boxes[boxB + 2]);
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // descend to the sibling that adds the least surface area to the tree
+        int index = root;
+        while (!isLeaf(index)) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = unionArea(leaf, c1) - (isLeaf(c1) ? 0 : area(c1)) + inheritanceCost;
+            float cost2 = unionArea(leaf, c2) - (isLeaf(c2) ? 0 : area(c2)) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2)
+                break;
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL)
+            replaceChild(oldParent, sibling, newParent);
+        else
+            root = newParent;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        fixUpwards(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+        if (grandParent != NULL) {
+            replaceChild(grandParent, oldParent, sibling);
+            parent[sibling] = grandParent;
+            freeNode(oldParent);
+            fixUpwards(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(oldParent);
+        }
+    }
+
+    private void fixUpwards(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (child1[node] == oldChild)
+            child1[node] = newChild;
+        else
+            child2[node] = newChild;
+    }
+
+    /**
+     * Rotates the taller child of a up if the heights of its children differ by more than one, returns the new root of
+     * the subtree.
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2)
+            return a;
+
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        if (balance > 1)
+            return rotate(a, c, b, false);
+        if (balance < -1)
+            return rotate(a, b, c, true);
+        return a;
+    }
+
+    /**
+     * Makes up the parent of a, a keeps other as one child and gets the shorter child of up as the other one.
+     *
+     * @param upIsChild1 whether up is the first child of a
+     */
+    private int rotate(int a, int up, int other, boolean upIsChild1) {
+        int f = child1[up];
+        int g = child2[up];
+
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+        if (parent[up] != NULL)
+            replaceChild(parent[up], a, up);
+        else
+            root = up;
+
+        int stay = height[f] > height[g] ? f : g;
+        int move = stay == f ? g : f;
+
+        child2[up] = stay;
+        if (upIsChild1)
+            child1[a] = move;
+        else
+            child2[a] = move;
+        parent[move] = a;
+
+        setUnion(a, other, move);
+        setUnion(up, a, stay);
+        height[a] = 1 + Math.max(height[other], height[move]);
+        height[up] = 1 + Math.max(height[a], height[stay]);
+        return up;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL)
+            allocateArrays(parent.length * 2);
+
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        values[node] = null;
+        height[node] = -1;
+        parent[node] = freeList;
+        freeList = node;
+    }
+
+    private void allocateArrays(int capacity) {
+        int oldCapacity = parent == null ? 0 : parent.length;
+        if (parent == null) {
+            boxes = new float[capacity * BOX_SIZE];
+            parent = new int[capacity];
+            child1 = new int[capacity];
+            child2 = new int[capacity];
+            height = new int[capacity];
+            values = new Object[capacity];
+        } else {
+            boxes = Arrays.copyOf(boxes, capacity * BOX_SIZE);
+            parent = Arrays.copyOf(parent, capacity);
+            child1 = Arrays.copyOf(child1, capacity);
+            child2 = Arrays.copyOf(child2, capacity);
+            height = Arrays.copyOf(height, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        // the new nodes form the free list, in order
+        for (int node = oldCapacity; node < capacity; node++) {
+            parent[node] = node + 1 < capacity ? node + 1 : freeList;
+            height[node] = -1;
+        }
+        freeList = oldCapacity;
+    }
+}
@@ -0,0 +1,132 @@
+package ch.fhnw.comgr.mesh;
+
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.matrix.Matrix4x4;
+
+/**
+ * The six planes of a view frustum in world space, extracted from a view-projection matrix (Gribb and Hartmann). The
+ * planes point inwards and are normalized, so a point p is inside if {@code a px + b py + c pz + d >= 0} for all of
+ * them.
+ * <p>
+ * The frustum is mutable and the tests don't allocate, set it once per frame and test every object against it.
+ */
+public final class Frustum {
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTING = 1;
+    public static final int INSIDE = 2;
+
+    private static final int PLANES = 6;
+
+    // a, b, c, d of left, right, bottom, top, near, far
+    private final float[] planes = new float[PLANES * 4];
+
+    public Frustum set(Matrix4x4 viewProjection) {
+        return set(viewProjection.m11(), viewProjection.m12(), viewProjection.m13(), viewProjection.m14(),
+                viewProjection.m21(), viewProjection.m22(), viewProjection.m23(), viewProjection.m24(),
+                viewProjection.m31(), viewProjection.m32(), viewProjection.m33(), viewProjection.m34(),
+                viewProjection.m41(), viewProjection.m42(), viewProjection.m43(), viewProjection.m44());
+    }
+
+    public Frustum set(Mat4f viewProjection) {
+        return set(viewProjection.m11, viewProjection.m12, viewProjection.m13, viewProjection.m14,
+                viewProjection.m21, viewProjection.m22, viewProjection.m23, viewProjection.m24,
+                viewProjection.m31, viewProjection.m32, viewProjection.m33, viewProjection.m34,
+                viewProjection.m41, viewProjection.m42, viewProjection.m43, viewProjection.m44);
+    }
+
+    private Frustum set(float m11, float m12, float m13, float m14,
+                        float m21, float m22, float m23, float m24,
+                        float m31, float m32, float m33, float m34,
+                        float m41, float m42, float m43, float m44) {
+        // row vectors, so clip coordinate j is the dot product with column j and -w <= x, y, z <= w gives the planes
+        setPlane(0, m14 + m11, m24 + m21, m34 + m31, m44 + m41);
+        setPlane(1, m14 - m11, m24 - m21, m34 - m31, m44 - m41);
+        setPlane(2, m14 + m12, m24 + m22, m34 + m32, m44 + m42);
+        setPlane(3, m14 - m12, m24 - m22, m34 - m32, m44 - m42);
+        setPlane(4, m14 + m13, m24 + m23, m34 + m33, m44 + m43);
+        setPlane(5, m14 - m13, m24 - m23, m34 - m33, m44 - m43);
+        return this;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        planes[plane * 4] = a / length;
+        planes[plane * 4 + 1] = b / length;
+        planes[plane * 4 + 2] = c / length;
+        planes[plane * 4 + 3] = d / length;
+    }
+
+    /**
+     * False if the sphere is completely outside. Spheres close to a corner may be reported as inside.
+     */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < planes.length; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * False if the axis aligned box, given by its center and half extents, is completely outside.
+     */
+    public boolean intersectsBox(float x, float y, float z, float extentX, float extentY, float extentZ) {
+        for (int i = 0; i < planes.length; i += 4) {
+            float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+            float radius = Math.abs(a) * extentX + Math.abs(b) * extentY + Math.abs(c) * extentZ;
+            if (a * x + b * y + c * z + planes[i + 3] < -radius)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the box, given by its min and max corner, is completely {@link #OUTSIDE}, completely
+     * {@link #INSIDE} or {@link #INTERSECTING} the frustum. Boxes close to a corner may be reported as intersecting.
+     */
+    public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float x = (minX + maxX) / 2, y = (minY + maxY) / 2, z = (minZ + maxZ) / 2;
+        float extentX = (maxX - minX) / 2, extentY = (maxY - minY) / 2, extentZ = (maxZ - minZ) / 2;
+
+        int result = INSIDE;
+        for (int i = 0; i < planes.length; i += 4) {
+            float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+            float radius = Math.abs(a) * extentX + Math.abs(b) * extentY + Math.abs(c) * extentZ;
+            float distance = a * x + b * y + c * z + planes[i + 3];
+            if (distance < -radius)
+                return OUTSIDE;
+            if (distance < radius)
+                result = INTERSECTING;
+        }
+        return result;
+    }
+
+    /**
+     * False if the mesh with the bounds, transformed by the model matrix, is completely outside. The cheap sphere test
+     * comes first, the box is only tested for spheres that intersect.
+     */
+    public boolean intersects(BoundingSphere sphere, BoundingBox box, Mat4f model) {
+        float sx = sphere.center().x(), sy = sphere.center().y(), sz = sphere.center().z();
+        float x = sx * model.m11 + sy * model.m21 + sz * model.m31 + model.m41;
+        float y = sx * model.m12 + sy * model.m22 + sz * model.m32 + model.m42;
+        float z = sx * model.m13 + sy * model.m23 + sz * model.m33 + model.m43;
+
+        // rows 1 to 3 are the transformed axes, the longest one scales the radius
+        float scaleSquared = Math.max(model.m11 * model.m11 + model.m12 * model.m12 + model.m13 * model.m13,
+                Math.max(model.m21 * model.m21 + model.m22 * model.m22 + model.m23 * model.m23,
+                        model.m31 * model.m31 + model.m32 * model.m32 + model.m33 * model.m33));
+        if (!intersectsSphere(x, y, z, sphere.radius() * (float) Math.sqrt(scaleSquared)))
+            return false;
+
+        // box around the transformed box (Arvo)
+        float cx = (box.min().x() + box.max().x()) / 2, cy = (box.min().y() + box.max().y()) / 2, cz = (box.min().z() + box.max().z()) / 2;
+        float ex = (box.max().x() - box.min().x()) / 2, ey = (box.max().y() - box.min().y()) / 2, ez = (box.max().z() - box.min().z()) / 2;
+        return intersectsBox(
+                cx * model.m11 + cy * model.m21 + cz * model.m31 + model.m41,
+                cx * model.m12 + cy * model.m22 + cz * model.m32 + model.m42,
+                cx * model.m13 + cy * model.m23 + cz * model.m33 + model.m43,
+                Math.abs(model.m11) * ex + Math.abs(model.m21) * ey + Math.abs(model.m31) * ez,
+                Math.abs(model.m12) * ex + Math.abs(model.m22) * ey + Math.abs(model.m32) * ez,
+                Math.abs(model.m13) * ex + Math.abs(model.m23) * ey + Math.abs(model.m33) * ez);
+    }
+}
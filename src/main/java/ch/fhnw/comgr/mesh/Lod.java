@@ -0,0 +1,13 @@
+package ch.fhnw.comgr.mesh;
+
+import java.util.List;
+
+/**
+ * One level of detail of a mesh: a range in the shared index buffer, all levels use the same vertices. The range is
+ * split into one submesh per material.
+ */
+public record Lod(int firstIndex, int indexCount, List<Submesh> submeshes) {
+    public int triangleCount() {
+        return indexCount / 3;
+    }
+}
@@ -0,0 +1,432 @@
+package ch.fhnw.comgr.mesh;
+
+import ch.fhnw.comgr.vector.Vector3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simplifies triangle meshes by edge collapse ordered by quadric error (Garland and Heckbert, "Surface Simplification
+ * Using Quadric Error Metrics"). Vertices are laid out as described by a {@link VertexLayout} and are never moved or created, a
+ * collapse only redirects indices, so every level of detail can share the original vertex buffer.
+ * <p>
+ * The topology is built from positions, so vertices that are split for different normals or texture coordinates are
+ * collapsed together. A collapse is only allowed if every vertex moving away finds a replacement on the other end of
+ * the edge: either a vertex it shares a triangle with (along a seam, both sides stay continuous) or one with the same
+ * texture coordinates and a normal within {@link #CREASE_ANGLE}. Collapses across uv seams and hard edges are
+ * rejected that way.
+ */
+public final class MeshSimplifier {
+    /**
+     * Largest angle between the normals of two vertices that may replace each other.
+     */
+    public static final float CREASE_ANGLE = (float) Math.toRadians(60);
+
+    private static final float CREASE_COS = (float) Math.cos(CREASE_ANGLE);
+    private static final float BORDER_WEIGHT = 10;
+    private static final int QUADRIC_SIZE = 10;
+
+    private final float[] vertices;
+    private final int vertexSize;
+    private final int positionOffset;
+    private final int normalOffset;
+    private final int stOffset;
+    private final int vertexCount;
+
+    // vertices with the same position form a class, the simplifier works on classes
+    private final int[] classOf;
+    private final int[] classStart;
+    private final int[] classMembers;
+    private final double[] quadrics;
+
+    private final int[] indices;
+    private int indexCount;
+    private final int[] remap;
+
+    // triangles around every class, rebuilt once per pass
+    private int[] adjacencyStart;
+    private int[] adjacency;
+    private final boolean[] referenced;
+
+    // face normals of the triangle checks, reused so they don't allocate
+    private final float[] normal = new float[3];
+    private final float[] movedNormal = new float[3];
+
+    private MeshSimplifier(float[] vertices, VertexLayout layout, int[] indices) {
+        this.vertices = vertices;
+        this.vertexSize = layout.vertexSize();
+        this.positionOffset = layout.positionOffset();
+        this.normalOffset = layout.normalOffset();
+        this.stOffset = layout.stOffset();
+        this.vertexCount = vertices.length / vertexSize;
+        this.indices = indices.clone();
+        this.indexCount = indices.length;
+
+        classOf = new int[vertexCount];
+        Map<Vector3, Integer> classes = new HashMap<>();
+        for (int v = 0; v < vertexCount; v++) {
+            Integer existing = classes.putIfAbsent(position(v), classes.size());
+            classOf[v] = existing != null ? existing : classes.size() - 1;
+        }
+
+        int classCount = classes.size();
+        classStart = new int[classCount + 1];
+        for (int v = 0; v < vertexCount; v++)
+            classStart[classOf[v] + 1]++;
+        for (int c = 0; c < classCount; c++)
+            classStart[c + 1] += classStart[c];
+        classMembers = new int[vertexCount];
+        int[] fill = Arrays.copyOf(classStart, classCount);
+        for (int v = 0; v < vertexCount; v++)
+            classMembers[fill[classOf[v]]++] = v;
+
+        remap = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++)
+            remap[v] = v;
+        referenced = new boolean[vertexCount];
+
+        // degenerate triangles have no plane and would confuse the adjacency
+        compact();
+
+        quadrics = new double[classCount * QUADRIC_SIZE];
+        computeQuadrics();
+    }
+
+    /**
+     * Simplifies the mesh until at most targetIndexCount indices are left, or no further collapse is possible.
+     *
+     * @return the new index buffer, referring to the unchanged vertices
+     */
+    public static int[] simplify(float[] vertices, VertexLayout layout, int[] indices, int targetIndexCount) {
+        MeshSimplifier simplifier = new MeshSimplifier(vertices, layout, indices);
+        simplifier.simplify(targetIndexCount);
+        return Arrays.copyOf(simplifier.indices, simplifier.indexCount);
+    }
+
+    /**
+     * Builds a chain of levels of detail, one for each ratio of the original triangle count. Every level is simplified
+     * from the previous one, a level that can't get any smaller has the same triangles as the one before.
+     */
+    public static List<int[]> generateLods(float[] vertices, VertexLayout layout, int[] indices, float... ratios) {
+        List<int[]> lods = new ArrayList<>();
+        MeshSimplifier simplifier = new MeshSimplifier(vertices, layout, indices);
+
+        for (float ratio : ratios) {
+            simplifier.simplify((int) (indices.length * ratio) / 3 * 3);
+            lods.add(Arrays.copyOf(simplifier.indices, simplifier.indexCount));
+        }
+
+        return lods;
+    }
+
+    private void simplify(int targetIndexCount) {
+        while (indexCount > targetIndexCount) {
+            buildAdjacency();
+
+            long[] candidates = collectCandidates();
+            Arrays.sort(candidates);
+
+            boolean[] locked = new boolean[classStart.length - 1];
+            int trianglesToRemove = (indexCount - targetIndexCount) / 3;
+            int removed = 0;
+            int collapses = 0;
+
+            for (long candidate : candidates) {
+                int edge = (int) candidate;
+                int u = classOf[indices[edge]];
+                int v = classOf[indices[next(edge)]];
+                if (locked[u] || locked[v] || !collapse(u, v))
+                    continue;
+
+                collapses++;
+                for (int i = adjacencyStart[u]; i < adjacencyStart[u + 1]; i++) {
+                    int triangle = adjacency[i];
+                    boolean containsV = false;
+                    for (int k = 0; k < 3; k++) {
+                        int c = classOf[indices[triangle * 3 + k]];
+                        locked[c] = true;
+                        containsV |= c == v;
+                    }
+                    if (containsV)
+                        removed++;
+                }
+
+                if (removed >= trianglesToRemove)
+                    break;
+            }
+
+            if (collapses == 0)
+                return;
+
+            compact();
+        }
+    }
+
+    /**
+     * Every directed edge of every triangle, packed as the float bits of its cost (which sort like ints, since the
+     * costs are positive) and the index of its first corner.
+     */
+    private long[] collectCandidates() {
+        long[] candidates = new long[indexCount];
+        int count = 0;
+        for (int i = 0; i < indexCount; i++) {
+            int u = classOf[indices[i]];
+            int v = classOf[indices[next(i)]];
+            float cost = (float) Math.max(0, error(u, v));
+            candidates[count++] = (long) Float.floatToIntBits(cost) << 32 | i;
+        }
+        return candidates;
+    }
+
+    /**
+     * Error of moving class u onto the position of class v.
+     */
+    private double error(int u, int v) {
+        int offset = positionOffset(classMembers[classStart[v]]);
+        double x = vertices[offset];
+        double y = vertices[offset + 1];
+        double z = vertices[offset + 2];
+
+        return evaluate(u, x, y, z) + evaluate(v, x, y, z);
+    }
+
+    private double evaluate(int c, double x, double y, double z) {
+        int q = c * QUADRIC_SIZE;
+        return quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z + 2 * quadrics[q + 3] * x
+                + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z + 2 * quadrics[q + 6] * y
+                + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z
+                + quadrics[q + 9];
+    }
+
+    /**
+     * Collapses class u onto class v if no triangle flips and all vertices of u find a replacement in v.
+     */
+    private boolean collapse(int u, int v) {
+        int target = classMembers[classStart[v]];
+
+        int start = adjacencyStart[u];
+        int end = adjacencyStart[u + 1];
+        for (int i = start; i < end; i++) {
+            int triangle = adjacency[i];
+            int corner = cornerOf(triangle, u);
+            if (cornerOf(triangle, v) >= 0)
+                continue;
+
+            // target has the position of v, the triangle as it would be after the collapse
+            int a = indices[triangle * 3];
+            int b = indices[triangle * 3 + 1];
+            int c = indices[triangle * 3 + 2];
+            normal(a, b, c, normal);
+            normal(corner == 0 ? target : a, corner == 1 ? target : b, corner == 2 ? target : c, movedNormal);
+
+            if (normal[0] * movedNormal[0] + normal[1] * movedNormal[1] + normal[2] * movedNormal[2] <= 0)
+                return false;
+        }
+
+        int[] moved = new int[end - start];
+        int[] replacements = new int[end - start];
+        int movedCount = 0;
+        for (int i = start; i < end; i++) {
+            int vertex = indices[adjacency[i] * 3 + cornerOf(adjacency[i], u)];
+            boolean done = false;
+            for (int j = 0; j < movedCount; j++)
+                done |= moved[j] == vertex;
+            if (done)
+                continue;
+
+            int replacement = findReplacement(vertex, u, v);
+            if (replacement < 0)
+                return false;
+            moved[movedCount] = vertex;
+            replacements[movedCount++] = replacement;
+        }
+
+        for (int i = 0; i < movedCount; i++)
+            remap[moved[i]] = replacements[i];
+        for (int i = 0; i < QUADRIC_SIZE; i++)
+            quadrics[v * QUADRIC_SIZE + i] += quadrics[u * QUADRIC_SIZE + i];
+        return true;
+    }
+
+    private int findReplacement(int vertex, int u, int v) {
+        // a vertex of v in a triangle with this vertex, the attributes are continuous along the edge
+        for (int i = adjacencyStart[u]; i < adjacencyStart[u + 1]; i++) {
+            int triangle = adjacency[i];
+            int v0 = cornerOf(triangle, v);
+            if (v0 >= 0 && indices[triangle * 3 + cornerOf(triangle, u)] == vertex)
+                return indices[triangle * 3 + v0];
+        }
+
+        // otherwise the vertex of v with the same texture coordinates and the closest normal
+        int best = -1;
+        float bestCos = CREASE_COS;
+        int offset = vertex * vertexSize;
+        for (int i = classStart[v]; i < classStart[v + 1]; i++) {
+            int candidate = classMembers[i];
+            int candidateOffset = candidate * vertexSize;
+            if (!referenced[candidate]
+                    || vertices[offset + stOffset] != vertices[candidateOffset + stOffset]
+                    || vertices[offset + stOffset + 1] != vertices[candidateOffset + stOffset + 1])
+                continue;
+
+            // normals computed for faces without vn aren't normalized
+            float dot = 0;
+            float lengthSquared = 0;
+            float candidateLengthSquared = 0;
+            for (int k = 0; k < 3; k++) {
+                float n = vertices[offset + normalOffset + k];
+                float m = vertices[candidateOffset + normalOffset + k];
+                dot += n * m;
+                lengthSquared += n * n;
+                candidateLengthSquared += m * m;
+            }
+            float cos = dot / (float) Math.sqrt(lengthSquared * candidateLengthSquared);
+            if (cos >= bestCos) {
+                bestCos = cos;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Applies the collapses of the pass to the index buffer and drops the triangles that became degenerate.
+     */
+    private void compact() {
+        int count = 0;
+        for (int i = 0; i < indexCount; i += 3) {
+            int a = remap[indices[i]];
+            int b = remap[indices[i + 1]];
+            int c = remap[indices[i + 2]];
+            if (classOf[a] == classOf[b] || classOf[b] == classOf[c] || classOf[c] == classOf[a])
+                continue;
+            indices[count++] = a;
+            indices[count++] = b;
+            indices[count++] = c;
+        }
+        indexCount = count;
+    }
+
+    private void buildAdjacency() {
+        int classCount = classStart.length - 1;
+        adjacencyStart = new int[classCount + 1];
+        for (int i = 0; i < indexCount; i++)
+            adjacencyStart[classOf[indices[i]] + 1]++;
+        for (int c = 0; c < classCount; c++)
+            adjacencyStart[c + 1] += adjacencyStart[c];
+
+        adjacency = new int[indexCount];
+        int[] fill = Arrays.copyOf(adjacencyStart, classCount);
+        for (int i = 0; i < indexCount; i++)
+            adjacency[fill[classOf[indices[i]]]++] = i / 3;
+
+        Arrays.fill(referenced, false);
+        for (int i = 0; i < indexCount; i++)
+            referenced[indices[i]] = true;
+    }
+
+    private void computeQuadrics() {
+        // edges used by only one triangle are borders, they get a plane perpendicular to their triangle
+        Map<Long, Integer> edgeUses = new HashMap<>();
+        for (int i = 0; i < indexCount; i++)
+            edgeUses.merge(edgeKey(classOf[indices[i]], classOf[indices[next(i)]]), 1, Integer::sum);
+
+        for (int triangle = 0; triangle < indexCount / 3; triangle++) {
+            int a = indices[triangle * 3];
+            normal(a, indices[triangle * 3 + 1], indices[triangle * 3 + 2], normal);
+            double length = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+            if (length == 0)
+                continue;
+
+            // the planes are weighted by the triangle area, half the length of the cross product
+            double nx = normal[0] / length;
+            double ny = normal[1] / length;
+            double nz = normal[2] / length;
+            for (int k = 0; k < 3; k++)
+                addPlane(classOf[indices[triangle * 3 + k]], nx, ny, nz, a, length / 2);
+
+            for (int k = 0; k < 3; k++) {
+                int i = triangle * 3 + k;
+                int from = classOf[indices[i]];
+                int to = classOf[indices[next(i)]];
+                if (edgeUses.get(edgeKey(from, to)) != 1)
+                    continue;
+
+                int p = positionOffset(indices[i]);
+                int q = positionOffset(indices[next(i)]);
+                double ex = vertices[q] - vertices[p];
+                double ey = vertices[q + 1] - vertices[p + 1];
+                double ez = vertices[q + 2] - vertices[p + 2];
+                double bx = ey * nz - ez * ny;
+                double by = ez * nx - ex * nz;
+                double bz = ex * ny - ey * nx;
+                double borderLength = Math.sqrt(bx * bx + by * by + bz * bz);
+                if (borderLength == 0)
+                    continue;
+
+                double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+                addPlane(from, bx / borderLength, by / borderLength, bz / borderLength, indices[i], weight);
+                addPlane(to, bx / borderLength, by / borderLength, bz / borderLength, indices[i], weight);
+            }
+        }
+    }
+
+    /**
+     * Adds the plane through the position of the vertex to the quadric of class c.
+     */
+    private void addPlane(int c, double nx, double ny, double nz, int vertex, double weight) {
+        int p = positionOffset(vertex);
+        double d = -(nx * vertices[p] + ny * vertices[p + 1] + nz * vertices[p + 2]);
+        int q = c * QUADRIC_SIZE;
+        quadrics[q] += weight * nx * nx;
+        quadrics[q + 1] += weight * nx * ny;
+        quadrics[q + 2] += weight * nx * nz;
+        quadrics[q + 3] += weight * nx * d;
+        quadrics[q + 4] += weight * ny * ny;
+        quadrics[q + 5] += weight * ny * nz;
+        quadrics[q + 6] += weight * ny * d;
+        quadrics[q + 7] += weight * nz * nz;
+        quadrics[q + 8] += weight * nz * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    private int cornerOf(int triangle, int c) {
+        for (int k = 0; k < 3; k++) {
+            if (classOf[indices[triangle * 3 + k]] == c)
+                return k;
+        }
+        return -1;
+    }
+
+    private Vector3 position(int vertex) {
+        int offset = positionOffset(vertex);
+        return new Vector3(vertices[offset], vertices[offset + 1], vertices[offset + 2]);
+    }
+
+    private int positionOffset(int vertex) {
+        return vertex * vertexSize + positionOffset;
+    }
+
+    /**
+     * Writes the unnormalized normal of the triangle of the three vertices to dest, its length is twice the area.
+     */
+    private void normal(int a, int b, int c, float[] dest) {
+        int pa = positionOffset(a), pb = positionOffset(b), pc = positionOffset(c);
+        float ux = vertices[pb] - vertices[pa], uy = vertices[pb + 1] - vertices[pa + 1], uz = vertices[pb + 2] - vertices[pa + 2];
+        float vx = vertices[pc] - vertices[pa], vy = vertices[pc + 1] - vertices[pa + 1], vz = vertices[pc + 2] - vertices[pa + 2];
+        dest[0] = uy * vz - uz * vy;
+        dest[1] = uz * vx - ux * vz;
+        dest[2] = ux * vy - uy * vx;
+    }
+
+    private static int next(int index) {
+        return index % 3 == 2 ? index - 2 : index + 1;
+    }
+
+    private static long edgeKey(int a, int b) {
+        return (long) Math.min(a, b) << 32 | Math.max(a, b);
+    }
+}
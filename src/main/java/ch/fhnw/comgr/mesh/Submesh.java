@@ -0,0 +1,13 @@
+package ch.fhnw.comgr.mesh;
+
+/**
+ * A range of the index buffer drawn with one material. Triangles without a material use the name
+ * {@link #NO_MATERIAL}.
+ */
+public record Submesh(String material, int firstIndex, int indexCount) {
+    public static final String NO_MATERIAL = "";
+
+    public int triangleCount() {
+        return indexCount / 3;
+    }
+}
@@ -28,20 +28,11 @@
 
 package ch.fhnw.comgr.mesh;
 
-import ch.fhnw.comgr.obj.Mtl;
-import ch.fhnw.comgr.texture.ColorTexture;
-import ch.fhnw.comgr.texture.Texture;
-import ch.fhnw.comgr.vector.Vector3;
-
-public record Tri(int a, int b, int c, Mtl material) {
-    public Tri(int a, int b, int c) {
-        this(a, b, c, new ColorTexture(Vector3.MAGENTA));
-    }
-
-    public Tri(int a, int b, int c, Texture texture) {
-        this(a, b, c, new Mtl(Vector3.WHITE, Vector3.WHITE, Vector3.BLACK, 50, texture));
-    }
-
+/**
+ * A triangle of vertex indices. The material is not part of the triangle, meshes group their triangles by material
+ * into {@link Submesh} ranges instead.
+ */
+public record Tri(int a, int b, int c) {
     public int[] toArray() {
         return new int[] {a, b, c};
     }
@@ -0,0 +1,220 @@
+package ch.fhnw.comgr.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Reorders index buffers for the post-transform vertex cache (Tom Forsyth, "Linear-Speed Vertex Cache Optimisation")
+ * and vertex buffers for fetch locality.
+ */
+public class VertexCacheOptimizer {
+    /**
+     * Size of the cache the triangle order is optimized for.
+     */
+    public static final int CACHE_SIZE = 32;
+
+    /**
+     * Size of the FIFO cache used for {@link #acmr} and {@link #atvr}, a conservative guess for real hardware.
+     */
+    public static final int SIMULATED_CACHE_SIZE = 16;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    /**
+     * Reorders the triangles in place, so that consecutive triangles reuse the vertices still in the cache.
+     */
+    public static void optimizeTriangleOrder(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0)
+            return;
+
+        // triangles of every vertex, the first valence[v] entries are the ones not emitted yet
+        int[] valence = new int[vertexCount];
+        for (int index : indices)
+            valence[index]++;
+
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++)
+            offsets[v + 1] = offsets[v] + valence[v];
+
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indices.length; i++)
+            adjacency[fill[indices[i]]++] = i / 3;
+
+        int[] cachePositions = new int[vertexCount];
+        Arrays.fill(cachePositions, -1);
+        float[] vertexScores = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++)
+            vertexScores[v] = vertexScore(-1, valence[v]);
+
+        boolean[] emitted = new boolean[triangleCount];
+        int bestTriangle = 0;
+        float bestScore = -1;
+        for (int t = 0; t < triangleCount; t++) {
+            float score = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+            if (score > bestScore) {
+                bestScore = score;
+                bestTriangle = t;
+            }
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] output = new int[indices.length];
+        int cursor = 0;
+
+        for (int out = 0; out < triangleCount; out++) {
+            if (bestTriangle < 0) {
+                // nothing in the cache has triangles left, continue with the next triangle in file order
+                while (emitted[cursor])
+                    cursor++;
+                bestTriangle = cursor;
+            }
+
+            int t = bestTriangle;
+            emitted[t] = true;
+
+            int newCacheCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                output[out * 3 + k] = v;
+                newCache[newCacheCount++] = v;
+
+                // remove the triangle from the ones left for the vertex
+                int start = offsets[v];
+                int last = start + valence[v] - 1;
+                for (int i = start; i <= last; i++) {
+                    if (adjacency[i] == t) {
+                        adjacency[i] = adjacency[last];
+                        adjacency[last] = t;
+                        break;
+                    }
+                }
+                valence[v]--;
+            }
+
+            // the vertices of the triangle move to the front, the rest of the cache moves back
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != indices[t * 3] && v != indices[t * 3 + 1] && v != indices[t * 3 + 2])
+                    newCache[newCacheCount++] = v;
+            }
+
+            for (int i = 0; i < newCacheCount; i++) {
+                int v = newCache[i];
+                cachePositions[v] = i < CACHE_SIZE ? i : -1;
+                vertexScores[v] = vertexScore(cachePositions[v], valence[v]);
+            }
+
+            bestTriangle = -1;
+            bestScore = -1;
+            for (int i = 0; i < newCacheCount; i++) {
+                int v = newCache[i];
+                for (int j = offsets[v], end = offsets[v] + valence[v]; j < end; j++) {
+                    int other = adjacency[j];
+                    float score = vertexScores[indices[other * 3]] + vertexScores[indices[other * 3 + 1]] + vertexScores[indices[other * 3 + 2]];
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTriangle = other;
+                    }
+                }
+            }
+
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = Math.min(newCacheCount, CACHE_SIZE);
+        }
+
+        System.arraycopy(output, 0, indices, 0, indices.length);
+    }
+
+    /**
+     * Sorts the vertices by their first use in the index buffer and rewrites the indices accordingly. Vertices that
+     * no triangle uses are dropped.
+     *
+     * @return the reordered vertices, vertexSize floats per vertex
+     */
+    public static float[] optimizeVertexOrder(float[] vertices, int vertexSize, int[] indices) {
+        int vertexCount = vertices.length / vertexSize;
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+
+        float[] reordered = new float[vertices.length];
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) {
+                remap[v] = next;
+                System.arraycopy(vertices, v * vertexSize, reordered, next * vertexSize, vertexSize);
+                next++;
+            }
+            indices[i] = remap[v];
+        }
+
+        return next == vertexCount ? reordered : Arrays.copyOf(reordered, next * vertexSize);
+    }
+
+    /**
+     * Average cache miss ratio: transformed vertices per triangle, between 0.5 (ideal) and 3.
+     */
+    public static float acmr(int[] indices) {
+        return indices.length == 0 ? 0 : (float) countCacheMisses(indices) / (indices.length / 3);
+    }
+
+    /**
+     * Average transform to vertex ratio: transformed vertices per referenced vertex, 1 is ideal.
+     */
+    public static float atvr(int[] indices) {
+        int vertexCount = 0;
+        boolean[] referenced = new boolean[maxIndex(indices) + 1];
+        for (int index : indices) {
+            if (!referenced[index]) {
+                referenced[index] = true;
+                vertexCount++;
+            }
+        }
+        return vertexCount == 0 ? 0 : (float) countCacheMisses(indices) / vertexCount;
+    }
+
+    private static int countCacheMisses(int[] indices) {
+        // a vertex is in the fifo as long as less than SIMULATED_CACHE_SIZE other vertices were added after it
+        int[] insertedAt = new int[maxIndex(indices) + 1];
+        Arrays.fill(insertedAt, -SIMULATED_CACHE_SIZE - 1);
+
+        int misses = 0;
+        for (int index : indices) {
+            if (misses - insertedAt[index] > SIMULATED_CACHE_SIZE) {
+                insertedAt[index] = misses;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    private static int maxIndex(int[] indices) {
+        int max = -1;
+        for (int index : indices)
+            max = Math.max(max, index);
+        return max;
+    }
+
+    private static float vertexScore(int cachePosition, int remainingValence) {
+        if (remainingValence == 0)
+            return -1;
+
+        float score = 0;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3)
+                score = LAST_TRIANGLE_SCORE;
+            else
+                score = (float) Math.pow(1 - (cachePosition - 3) * (1f / (CACHE_SIZE - 3)), CACHE_DECAY_POWER);
+        }
+
+        return score + VALENCE_BOOST_SCALE * (float) Math.pow(remainingValence, -VALENCE_BOOST_POWER);
+    }
+}
@@ -0,0 +1,12 @@
+package ch.fhnw.comgr.mesh;
+
+/**
+ * Where the attributes are in an interleaved vertex array, all in floats.
+ *
+ * @param vertexSize     floats per vertex
+ * @param positionOffset the three floats of the position
+ * @param normalOffset   the three floats of the normal
+ * @param stOffset       the two floats of the texture coordinates
+ */
+public record VertexLayout(int vertexSize, int positionOffset, int normalOffset, int stOffset) {
+}
@@ -0,0 +1,395 @@
+package ch.fhnw.comgr.obj;
+
+import ch.fhnw.comgr.mesh.BoundingBox;
+import ch.fhnw.comgr.mesh.BoundingSphere;
+import ch.fhnw.comgr.mesh.Lod;
+import ch.fhnw.comgr.mesh.MeshSimplifier;
+import ch.fhnw.comgr.mesh.Submesh;
+import ch.fhnw.comgr.mesh.VertexCacheOptimizer;
+import ch.fhnw.comgr.vector.Vector3;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Mesh loaded from a binary cache file next to the build output. The first load parses the OBJ and writes the
+ * cache, every later load just maps the cache file and slices the vertex and index data out of it. The buffers can
+ * be handed to the vbos as they are, the vertices are interleaved as described by {@link MappedObj#VERTEX_SIZE}.
+ * <p>
+ * The cache is keyed by the length and CRC32C of the .obj and all .mtl files it references, a change to any of them
+ * rebuilds the cache. The parameters of the materials are stored in the cache as well, so a hit doesn't parse the .mtl
+ * files, only the images of diffuse maps are loaded. Triangles and vertices are reordered for the vertex cache while the cache is written.
+ * <p>
+ * The triangle buffer holds all levels of detail one after the other, {@link #lods} lists their ranges from the full
+ * mesh to the coarsest level. Within a level the triangles are grouped by material into submeshes. The triangle ratios of the levels are set with {@code -Dcomgr.lodRatios=0.5,0.25}.
+ */
+public record CachedMesh(
+        FloatBuffer vertexBuffer,
+        IntBuffer triangleBuffer,
+        List<Lod> lods,
+        BoundingSphere bounds,
+        BoundingBox box,
+        Map<String, Mtl> materials) {
+
+    public static final Path CACHE_DIRECTORY = Path.of(System.getProperty("comgr.meshCache", "build/mesh-cache"));
+
+    private static final int MAGIC = 0x434d4348; // "CMCH"
+    private static final int VERSION = 9;
+    // magic, version and the size of the whole header
+    private static final int PREFIX_SIZE = 3 * Integer.BYTES;
+
+    private static final float[] LOD_RATIOS = parseRatios(System.getProperty("comgr.lodRatios", "0.5,0.25,0.125,0.0625"));
+
+    /**
+     * Triangles of the full mesh.
+     */
+    public int triangleCount() {
+        return lods.get(0).triangleCount();
+    }
+
+    public static CachedMesh load(String filename) {
+        ByteBuffer source = MappedObj.map("/obj/" + filename + ".obj");
+        Path cacheFile = CACHE_DIRECTORY.resolve(filename + ".mesh");
+
+        try {
+            if (Files.exists(cacheFile)) {
+                CachedMesh mesh = read(cacheFile, source);
+                if (mesh != null)
+                    return mesh;
+            }
+
+            write(cacheFile, MappedObj.parseParallel(filename), source);
+
+            return read(cacheFile, source);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the header of the cache file and maps its data, returns null if it was written by another version, for a
+     * different source or is cut short. The file is only mapped once the header matches, so a stale cache file isn't
+     * held open while it's replaced.
+     */
+    private static CachedMesh read(Path cacheFile, ByteBuffer source) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer prefix = readFully(channel, 0, PREFIX_SIZE);
+            if (prefix == null || prefix.getInt() != MAGIC || prefix.getInt() != VERSION)
+                return null;
+
+            int headerSize = prefix.getInt();
+            if (headerSize < PREFIX_SIZE || headerSize > channel.size())
+                return null;
+            ByteBuffer header = readFully(channel, PREFIX_SIZE, headerSize - PREFIX_SIZE);
+            if (header == null)
+                return null;
+
+            try {
+                return read(channel, header, headerSize, source);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                // a corrupt header is just another miss
+                return null;
+            }
+        }
+    }
+
+    private static CachedMesh read(FileChannel channel, ByteBuffer buffer, int headerSize, ByteBuffer source) throws IOException {
+        int materialLibraryCount = buffer.getInt();
+        List<String> materialLibraries = new ArrayList<>();
+        for (int i = 0; i < materialLibraryCount; i++)
+            materialLibraries.add(getString(buffer));
+
+        if (buffer.getLong() != hash(source, materialLibraries))
+            return null;
+
+        int vertexCount = buffer.getInt();
+        int indexCount = buffer.getInt();
+        long vertexSize = (long) vertexCount * MappedObj.VERTEX_SIZE * Float.BYTES;
+        long indexSize = (long) indexCount * Integer.BYTES;
+        if (vertexCount < 0 || indexCount < 0 || channel.size() != headerSize + vertexSize + indexSize)
+            return null;
+
+        int materialCount = buffer.getInt();
+        List<String> materialNames = new ArrayList<>();
+        for (int i = 0; i < materialCount; i++)
+            materialNames.add(getString(buffer));
+
+        int mtlCount = buffer.getInt();
+        Map<String, Mtl> materials = new HashMap<>();
+        for (int i = 0; i < mtlCount; i++) {
+            String name = getString(buffer);
+            Mtl mtl = new Mtl();
+            mtl.setKa(getVector3(buffer));
+            mtl.setKd(getVector3(buffer));
+            mtl.setKs(getVector3(buffer));
+            mtl.setNs(buffer.getFloat());
+            String mapKdPath = getString(buffer);
+            if (!mapKdPath.isEmpty())
+                mtl.setMapKd(mapKdPath);
+            materials.put(name, mtl);
+        }
+
+        int lodCount = buffer.getInt();
+        List<Lod> lods = new ArrayList<>();
+        for (int i = 0; i < lodCount; i++) {
+            int submeshCount = buffer.getInt();
+            List<Submesh> submeshes = new ArrayList<>();
+            for (int j = 0; j < submeshCount; j++)
+                submeshes.add(new Submesh(materialNames.get(buffer.getInt()), buffer.getInt(), buffer.getInt()));
+
+            int firstIndex = submeshes.isEmpty() ? 0 : submeshes.get(0).firstIndex();
+            int lodIndexCount = submeshes.stream().mapToInt(Submesh::indexCount).sum();
+            lods.add(new Lod(firstIndex, lodIndexCount, List.copyOf(submeshes)));
+        }
+
+        BoundingSphere bounds = new BoundingSphere(new Vector3(buffer.getFloat(), buffer.getFloat(), buffer.getFloat()), buffer.getFloat());
+        BoundingBox box = new BoundingBox(new Vector3(buffer.getFloat(), buffer.getFloat(), buffer.getFloat()),
+                new Vector3(buffer.getFloat(), buffer.getFloat(), buffer.getFloat()));
+
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, headerSize, vertexSize + indexSize).order(ByteOrder.nativeOrder());
+        FloatBuffer vertexBuffer = slice(data, (int) vertexSize).asFloatBuffer();
+        IntBuffer triangleBuffer = slice(data, (int) indexSize).asIntBuffer();
+
+        return new CachedMesh(vertexBuffer, triangleBuffer, List.copyOf(lods), bounds, box, materials);
+    }
+
+    private static void write(Path cacheFile, MappedObj obj, ByteBuffer source) throws IOException {
+        List<String> materialLibraries = obj.getMaterialLibraries();
+        Map<String, Mtl> materials = obj.getMaterials();
+
+        List<Submesh> submeshes = obj.getSubmeshes();
+        int vertexCount = obj.getVertexCount();
+
+        int[] triangleArray = obj.getTriangleArray().clone();
+        float acmr = VertexCacheOptimizer.acmr(triangleArray);
+        float atvr = VertexCacheOptimizer.atvr(triangleArray);
+
+        // triangles are only reordered within their submesh, so the materials stay contiguous
+        for (Submesh submesh : submeshes) {
+            int[] range = range(triangleArray, submesh);
+            VertexCacheOptimizer.optimizeTriangleOrder(range, vertexCount);
+            System.arraycopy(range, 0, triangleArray, submesh.firstIndex(), range.length);
+        }
+        float[] vertexArray = VertexCacheOptimizer.optimizeVertexOrder(obj.getInterleavedArray(), MappedObj.VERTEX_SIZE, triangleArray);
+        vertexCount = vertexArray.length / MappedObj.VERTEX_SIZE;
+
+        System.out.printf("vertex cache: ACMR %.3f -> %.3f, ATVR %.3f -> %.3f%n",
+                acmr, VertexCacheOptimizer.acmr(triangleArray), atvr, VertexCacheOptimizer.atvr(triangleArray));
+
+        // levels.get(lod).get(submesh) are the indices of a submesh in a level of detail. the coarser levels index into
+        // the same vertices, so they are simplified after the vertex order is final. every submesh is simplified on
+        // its own, which keeps the borders between materials in place
+        List<List<int[]>> levels = new ArrayList<>();
+        for (int lod = 0; lod <= LOD_RATIOS.length; lod++)
+            levels.add(new ArrayList<>());
+        for (Submesh submesh : submeshes) {
+            int[] range = range(triangleArray, submesh);
+            levels.get(0).add(range);
+
+            List<int[]> lods = MeshSimplifier.generateLods(vertexArray, MappedObj.LAYOUT, range, LOD_RATIOS);
+            for (int lod = 0; lod < lods.size(); lod++) {
+                VertexCacheOptimizer.optimizeTriangleOrder(lods.get(lod), vertexCount);
+                levels.get(lod + 1).add(lods.get(lod));
+            }
+        }
+        // levels that couldn't get any smaller are left out
+        for (int lod = levels.size() - 1; lod > 0; lod--) {
+            if (indexCount(levels.get(lod)) == indexCount(levels.get(lod - 1)))
+                levels.remove(lod);
+        }
+
+        int totalIndexCount = 0;
+        for (List<int[]> level : levels)
+            totalIndexCount += indexCount(level);
+        System.out.println("lods: " + levels.stream().map(level -> Integer.toString(indexCount(level) / 3)).toList());
+
+        BoundingSphere bounds = BoundingSphere.of(vertexArray, MappedObj.VERTEX_SIZE);
+        BoundingBox box = BoundingBox.of(vertexArray, MappedObj.VERTEX_SIZE);
+
+        int headerSize = PREFIX_SIZE + 6 * Integer.BYTES + Long.BYTES + 10 * Float.BYTES;
+        for (String materialLibrary : materialLibraries)
+            headerSize += stringSize(materialLibrary);
+        for (Submesh submesh : submeshes)
+            headerSize += stringSize(submesh.material());
+        for (Map.Entry<String, Mtl> material : materials.entrySet())
+            headerSize += stringSize(material.getKey()) + 10 * Float.BYTES + stringSize(mapKdPath(material.getValue()));
+        headerSize += levels.size() * (Integer.BYTES + submeshes.size() * 3 * Integer.BYTES);
+        // keeps the float and int data aligned in the mapped file
+        headerSize = (headerSize + 3) & ~3;
+
+        int dataSize = vertexArray.length * Float.BYTES + totalIndexCount * Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + dataSize).order(ByteOrder.nativeOrder());
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(headerSize);
+        buffer.putInt(materialLibraries.size());
+        for (String materialLibrary : materialLibraries)
+            putString(buffer, materialLibrary);
+        buffer.putLong(hash(source, materialLibraries));
+        buffer.putInt(vertexCount);
+        buffer.putInt(totalIndexCount);
+
+        buffer.putInt(submeshes.size());
+        for (Submesh submesh : submeshes)
+            putString(buffer, submesh.material());
+
+        buffer.putInt(materials.size());
+        for (Map.Entry<String, Mtl> material : materials.entrySet()) {
+            Mtl mtl = material.getValue();
+            putString(buffer, material.getKey());
+            putVector3(buffer, mtl.getKa());
+            putVector3(buffer, mtl.getKd());
+            putVector3(buffer, mtl.getKs());
+            buffer.putFloat(mtl.getNs());
+            putString(buffer, mapKdPath(mtl));
+        }
+
+        buffer.putInt(levels.size());
+        int firstIndex = 0;
+        for (List<int[]> level : levels) {
+            buffer.putInt(level.size());
+            for (int material = 0; material < level.size(); material++) {
+                buffer.putInt(material);
+                buffer.putInt(firstIndex);
+                buffer.putInt(level.get(material).length);
+                firstIndex += level.get(material).length;
+            }
+        }
+
+        buffer.putFloat(bounds.center().x());
+        buffer.putFloat(bounds.center().y());
+        buffer.putFloat(bounds.center().z());
+        buffer.putFloat(bounds.radius());
+        buffer.putFloat(box.min().x());
+        buffer.putFloat(box.min().y());
+        buffer.putFloat(box.min().z());
+        buffer.putFloat(box.max().x());
+        buffer.putFloat(box.max().y());
+        buffer.putFloat(box.max().z());
+        buffer.position(headerSize);
+
+        buffer.asFloatBuffer().put(vertexArray);
+        buffer.position(buffer.position() + vertexArray.length * Float.BYTES);
+        IntBuffer indexBuffer = buffer.asIntBuffer();
+        for (List<int[]> level : levels) {
+            for (int[] submeshIndices : level)
+                indexBuffer.put(submeshIndices);
+        }
+        buffer.rewind();
+
+        // write to a temporary file first, so a crash never leaves a half written cache behind
+        Files.createDirectories(cacheFile.getParent());
+        Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int[] range(int[] triangleArray, Submesh submesh) {
+        return Arrays.copyOfRange(triangleArray, submesh.firstIndex(), submesh.firstIndex() + submesh.indexCount());
+    }
+
+    private static int indexCount(List<int[]> level) {
+        int indexCount = 0;
+        for (int[] submeshIndices : level)
+            indexCount += submeshIndices.length;
+        return indexCount;
+    }
+
+    private static long hash(ByteBuffer source, List<String> materialLibraries) {
+        CRC32C crc = new CRC32C();
+        long length = source.remaining();
+        crc.update(source.duplicate());
+
+        for (String materialLibrary : materialLibraries) {
+            ByteBuffer materialSource = MappedObj.map("/obj/" + materialLibrary);
+            length += materialSource.remaining();
+            crc.update(materialSource);
+        }
+
+        // a different lod configuration needs a new cache as well
+        ByteBuffer ratios = ByteBuffer.allocate(LOD_RATIOS.length * Float.BYTES);
+        ratios.asFloatBuffer().put(LOD_RATIOS);
+        crc.update(ratios);
+
+        return length << 32 | crc.getValue();
+    }
+
+    private static float[] parseRatios(String ratios) {
+        String[] parts = ratios.split(",");
+        float[] result = new float[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            result[i] = Float.parseFloat(parts[i].trim());
+        return result;
+    }
+
+    /**
+     * Diffuse maps that weren't loaded from an image resource are left out, the material gets the default map then.
+     */
+    private static String mapKdPath(Mtl mtl) {
+        return mtl.getMapKdPath() != null ? mtl.getMapKdPath() : "";
+    }
+
+    private static int stringSize(String string) {
+        return Integer.BYTES + string.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putVector3(ByteBuffer buffer, Vector3 vector) {
+        buffer.putFloat(vector.x());
+        buffer.putFloat(vector.y());
+        buffer.putFloat(vector.z());
+    }
+
+    private static Vector3 getVector3(ByteBuffer buffer) {
+        return new Vector3(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+    /**
+     * Reads length bytes from the position of the file into a heap buffer, null if the file ends before.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.nativeOrder());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                return null;
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice(buffer.position(), length).order(buffer.order());
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+}
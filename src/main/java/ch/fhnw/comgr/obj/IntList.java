@@ -0,0 +1,43 @@
+package ch.fhnw.comgr.obj;
+
+import java.util.Arrays;
+
+final class IntList {
+    private int[] elements;
+    private int size;
+
+    IntList(int capacity) {
+        elements = new int[Math.max(capacity, 16)];
+    }
+
+    void add(int value) {
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        elements[size++] = value;
+    }
+
+    void add(int a, int b, int c) {
+        if (size + 3 > elements.length)
+            elements = Arrays.copyOf(elements, Math.max(size + 3, elements.length * 2));
+        elements[size] = a;
+        elements[size + 1] = b;
+        elements[size + 2] = c;
+        size += 3;
+    }
+
+    int get(int index) {
+        return elements[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    int[] toArray() {
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
+    }
+}
@@ -0,0 +1,492 @@
+package ch.fhnw.comgr.obj;
+
+import ch.fhnw.comgr.mesh.Submesh;
+import ch.fhnw.comgr.mesh.VertexLayout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * OBJ loader that memory-maps the file and scans it byte by byte. In contrast to {@link Obj} it doesn't create any
+ * records per vertex or face, the parsed data ends up directly in the arrays handed to the vbos. The output is the
+ * same as {@link Obj#getInterleavedArray()} and {@link Obj#getTriangleArray()}.
+ */
+public final class MappedObj {
+    /**
+     * Floats per vertex in the interleaved array: position (3), normal (3) and texture coordinates (2).
+     */
+    public static final int VERTEX_SIZE = 8;
+    public static final int POSITION_OFFSET = 0;
+    public static final int NORMAL_OFFSET = 3;
+    public static final int ST_OFFSET = 6;
+    public static final VertexLayout LAYOUT = new VertexLayout(VERTEX_SIZE, POSITION_OFFSET, NORMAL_OFFSET, ST_OFFSET);
+
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final float[] interleavedArray;
+    private final int[] triangleArray;
+    private final List<Submesh> submeshes;
+    private final List<String> materialLibraries;
+    private final Map<String, Mtl> materials;
+
+    private MappedObj(float[] interleavedArray, int[] triangleArray, List<Submesh> submeshes, List<String> materialLibraries, Map<String, Mtl> materials) {
+        this.interleavedArray = interleavedArray;
+        this.triangleArray = triangleArray;
+        this.submeshes = submeshes;
+        this.materialLibraries = materialLibraries;
+        this.materials = materials;
+    }
+
+    public float[] getInterleavedArray() {
+        return interleavedArray;
+    }
+
+    public float[] getVertexArray() {
+        return deinterleave(POSITION_OFFSET, 3);
+    }
+
+    public float[] getNormalArray() {
+        return deinterleave(NORMAL_OFFSET, 3);
+    }
+
+    public float[] getStArray() {
+        return deinterleave(ST_OFFSET, 2);
+    }
+
+    public int[] getTriangleArray() {
+        return triangleArray;
+    }
+
+    public int getVertexCount() {
+        return interleavedArray.length / VERTEX_SIZE;
+    }
+
+    public int getTriangleCount() {
+        return triangleArray.length / 3;
+    }
+
+    /**
+     * The triangles are grouped by material, one submesh per material in order of first use.
+     */
+    public List<Submesh> getSubmeshes() {
+        return submeshes;
+    }
+
+    public List<String> getMaterialLibraries() {
+        return materialLibraries;
+    }
+
+    public Map<String, Mtl> getMaterials() {
+        return materials;
+    }
+
+    public static MappedObj parse(String filename) {
+        return parse(filename, null);
+    }
+
+    public static MappedObj parseParallel(String filename) {
+        return parse(filename, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the file in chunks split at line boundaries. Each phase runs for all chunks in parallel on the given
+     * pool, the indices are fixed up by prefix sums in between. Without a pool the whole file is a single chunk parsed
+     * on the calling thread. The result is the same either way.
+     */
+    public static MappedObj parse(String filename, ForkJoinPool pool) {
+        ByteBuffer buffer = map("/obj/" + filename + ".obj");
+        Chunk[] chunks = split(buffer, pool == null ? 1 : pool.getParallelism() * 4);
+
+        forEach(pool, chunks, Chunk::count);
+
+        // the first v, vn and vt of every chunk get their global index
+        int vCount = 0;
+        int vnCount = 0;
+        int vtCount = 0;
+        for (Chunk chunk : chunks) {
+            chunk.vBase = vCount;
+            chunk.vnBase = vnCount;
+            chunk.vtBase = vtCount;
+            vCount += chunk.vCount;
+            vnCount += chunk.vnCount;
+            vtCount += chunk.vtCount;
+        }
+
+        float[] vArray = new float[vCount * 3];
+        float[] vnArray = new float[vnCount * 3];
+        float[] vtArray = new float[vtCount * 2];
+        forEach(pool, chunks, chunk -> chunk.parse(vArray, vnArray, vtArray));
+
+        // welding runs sequentially, so the vertices are numbered in order of their first use just like in Obj.
+        // every corner after the second one of a face adds a triangle
+        VertexMap vertexMap = new VertexMap(1024);
+        int vertexCount = 0;
+        int triangleCount = 0;
+        int cornerCount = 0;
+        for (Chunk chunk : chunks) {
+            chunk.triangleBase = triangleCount;
+            triangleCount += chunk.cornerCount - 2 * chunk.faceSizes.size();
+            cornerCount += chunk.cornerCount;
+            vertexCount = chunk.weld(vertexMap, vertexCount);
+        }
+
+        float[] vertices = new float[vertexCount * VERTEX_SIZE];
+        int[] triangles = new int[triangleCount * 3];
+        forEach(pool, chunks, chunk -> chunk.assemble(vArray, vnArray, vtArray, vertices, triangles));
+
+        List<Submesh> submeshes = new ArrayList<>();
+        int[] groupedTriangles = groupByMaterial(chunks, triangles, submeshes);
+
+        List<String> materialLibraries = new ArrayList<>();
+        for (Chunk chunk : chunks)
+            materialLibraries.addAll(chunk.materialLibraries);
+
+        System.out.println("tris: " + triangleCount);
+        Obj.printDedupRatio(vertexCount, cornerCount);
+
+        return new MappedObj(vertices, groupedTriangles, submeshes, materialLibraries, parseMaterials(materialLibraries));
+    }
+
+    /**
+     * Sorts the triangles by material, keeping their order within each material, and adds a submesh per material.
+     */
+    private static int[] groupByMaterial(Chunk[] chunks, int[] triangles, List<Submesh> submeshes) {
+        Map<String, Integer> materialIndices = new LinkedHashMap<>();
+        int[] triangleMaterials = new int[triangles.length / 3];
+        String name = Submesh.NO_MATERIAL;
+        int material = -1;
+        int triangle = 0;
+
+        for (Chunk chunk : chunks) {
+            int nextSwitch = 0;
+            for (int face = 0; face < chunk.faceSizes.size(); face++) {
+                while (nextSwitch < chunk.materialFaces.size() && chunk.materialFaces.get(nextSwitch) == face) {
+                    name = chunk.materialNames.get(nextSwitch++);
+                    material = -1;
+                }
+                if (material < 0)
+                    material = materialIndices.computeIfAbsent(name, key -> materialIndices.size());
+
+                for (int i = 2; i < chunk.faceSizes.get(face); i++)
+                    triangleMaterials[triangle++] = material;
+            }
+        }
+
+        int[] offsets = new int[materialIndices.size() + 1];
+        for (int triangleMaterial : triangleMaterials)
+            offsets[triangleMaterial + 1]++;
+        for (int i = 0; i < materialIndices.size(); i++)
+            offsets[i + 1] += offsets[i];
+
+        int i = 0;
+        for (String materialName : materialIndices.keySet()) {
+            submeshes.add(new Submesh(materialName, offsets[i] * 3, (offsets[i + 1] - offsets[i]) * 3));
+            i++;
+        }
+
+        if (materialIndices.size() <= 1)
+            return triangles;
+
+        int[] grouped = new int[triangles.length];
+        for (int t = 0; t < triangleMaterials.length; t++)
+            System.arraycopy(triangles, t * 3, grouped, offsets[triangleMaterials[t]]++ * 3, 3);
+        return grouped;
+    }
+
+    private static Map<String, Mtl> parseMaterials(List<String> materialLibraries) {
+        Map<String, Mtl> materials = new HashMap<>();
+        for (String materialLibrary : materialLibraries)
+            materials.putAll(MtlLib.parse("/obj/" + materialLibrary).materials());
+        return materials;
+    }
+
+    private static Chunk[] split(ByteBuffer buffer, int chunkCount) {
+        int limit = buffer.limit();
+        chunkCount = Math.max(1, Math.min(chunkCount, limit / MIN_CHUNK_SIZE));
+
+        Chunk[] chunks = new Chunk[chunkCount];
+        int start = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            int end = i == chunkCount - 1 ? limit : Math.max(start, (int) ((long) limit * (i + 1) / chunkCount));
+            while (end < limit && buffer.get(end - 1) != '\n')
+                end++;
+            chunks[i] = new Chunk(buffer, start, end);
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static void forEach(ForkJoinPool pool, Chunk[] chunks, Consumer<Chunk> action) {
+        if (pool == null) {
+            for (Chunk chunk : chunks)
+                action.accept(chunk);
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            Chunk chunk = chunks[i];
+            tasks[i] = pool.submit(() -> action.accept(chunk));
+        }
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+    }
+
+    private static final class Chunk {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+
+        private int vCount;
+        private int vnCount;
+        private int vtCount;
+        private int vBase;
+        private int vnBase;
+        private int vtBase;
+
+        // global, zero based (v, vt, vn) triples of all corners, -1 marks a missing vt or vn
+        private final IntList corners = new IntList(1024);
+        private final IntList faceSizes = new IntList(256);
+        private final List<String> materialLibraries = new ArrayList<>();
+        // usemtl statements, with the index of the face that follows each of them
+        private final IntList materialFaces = new IntList(16);
+        private final List<String> materialNames = new ArrayList<>();
+        private final IntList cornerVertices = new IntList(1024);
+        private int cornerCount;
+        private int vertexBase;
+        private int triangleBase;
+
+        private Chunk(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        private void count() {
+            ObjScanner scanner = new ObjScanner(buffer, start, end);
+            while (scanner.hasMore()) {
+                scanner.skipBlanks();
+
+                if (scanner.keyword("v"))
+                    vCount++;
+                else if (scanner.keyword("vn"))
+                    vnCount++;
+                else if (scanner.keyword("vt"))
+                    vtCount++;
+
+                scanner.nextLine();
+            }
+        }
+
+        private void parse(float[] vArray, float[] vnArray, float[] vtArray) {
+            int v = vBase * 3;
+            int vn = vnBase * 3;
+            int vt = vtBase * 2;
+
+            ObjScanner scanner = new ObjScanner(buffer, start, end);
+            while (scanner.hasMore()) {
+                scanner.skipBlanks();
+
+                if (scanner.keyword("v")) {
+                    vArray[v++] = scanner.parseFloat();
+                    vArray[v++] = scanner.parseFloat();
+                    vArray[v++] = -scanner.parseFloat();
+                } else if (scanner.keyword("vn")) {
+                    vnArray[vn++] = scanner.parseFloat();
+                    vnArray[vn++] = scanner.parseFloat();
+                    vnArray[vn++] = -scanner.parseFloat();
+                } else if (scanner.keyword("vt")) {
+                    vtArray[vt++] = scanner.parseFloat();
+                    vtArray[vt++] = scanner.parseFloat();
+                } else if (scanner.keyword("f")) {
+                    readFace(scanner, v / 3, vt / 2, vn / 3);
+                } else if (scanner.keyword("mtllib")) {
+                    materialLibraries.add(scanner.rest());
+                } else if (scanner.keyword("usemtl")) {
+                    materialFaces.add(faceSizes.size());
+                    materialNames.add(scanner.rest());
+                }
+
+                scanner.nextLine();
+            }
+        }
+
+        private void readFace(ObjScanner scanner, int vCount, int vtCount, int vnCount) {
+            int size = corners.size();
+            while (!scanner.atLineEnd()) {
+                int v = toIndex(scanner.parseInt(), vCount);
+                int vt = -1;
+                int vn = -1;
+
+                if (scanner.peek() == '/') {
+                    scanner.skip();
+                    if (scanner.peek() != '/')
+                        vt = toIndex(scanner.parseInt(), vtCount);
+                    if (scanner.peek() == '/') {
+                        scanner.skip();
+                        vn = toIndex(scanner.parseInt(), vnCount);
+                    }
+                }
+
+                corners.add(v, vt, vn);
+            }
+
+            int faceSize = (corners.size() - size) / 3;
+            if (faceSize < 3) {
+                corners.truncate(size);
+                return;
+            }
+            faceSizes.add(faceSize);
+            cornerCount += faceSize;
+        }
+
+        /**
+         * Assigns a vertex to every corner, starting at the given vertex index. Returns the next free index.
+         */
+        private int weld(VertexMap vertexMap, int vertexCount) {
+            vertexBase = vertexCount;
+
+            for (int corner = 0; corner < cornerCount; corner++) {
+                int vn = corners.get(corner * 3 + 2);
+
+                // corners without a normal get the face normal and always need their own vertex
+                if (vn >= 0) {
+                    int existing = vertexMap.putIfAbsent(corners.get(corner * 3), corners.get(corner * 3 + 1), vn, vertexCount);
+                    if (existing >= 0) {
+                        cornerVertices.add(existing);
+                        continue;
+                    }
+                }
+
+                cornerVertices.add(vertexCount++);
+            }
+
+            return vertexCount;
+        }
+
+        private void assemble(float[] vArray, float[] vnArray, float[] vtArray,
+                              float[] vertices, int[] triangles) {
+            int corner = 0;
+            int triangle = triangleBase * 3;
+            // new vertices are numbered consecutively, a corner owns its vertex if it is the next new one
+            int nextVertex = vertexBase;
+
+            for (int face = 0; face < faceSizes.size(); face++) {
+                int faceSize = faceSizes.get(face);
+                int first = corners.get(corner * 3) * 3;
+                int second = corners.get(corner * 3 + 3) * 3;
+                int third = corners.get(corner * 3 + 6) * 3;
+                int previous = second;
+                int firstVertex = cornerVertices.get(corner);
+
+                for (int i = 0; i < faceSize; i++, corner++) {
+                    int vertex = cornerVertices.get(corner);
+                    int v = corners.get(corner * 3) * 3;
+
+                    if (i >= 2) {
+                        triangles[triangle++] = firstVertex;
+                        triangles[triangle++] = vertex;
+                        triangles[triangle++] = cornerVertices.get(corner - 1);
+                    }
+
+                    if (vertex == nextVertex) {
+                        nextVertex++;
+
+                        int vt = corners.get(corner * 3 + 1) * 2;
+                        int vn = corners.get(corner * 3 + 2) * 3;
+
+                        int offset = vertex * VERTEX_SIZE;
+                        vertices[offset + POSITION_OFFSET] = vArray[v];
+                        vertices[offset + POSITION_OFFSET + 1] = vArray[v + 1];
+                        vertices[offset + POSITION_OFFSET + 2] = vArray[v + 2];
+
+                        if (vn >= 0) {
+                            vertices[offset + NORMAL_OFFSET] = vnArray[vn];
+                            vertices[offset + NORMAL_OFFSET + 1] = vnArray[vn + 1];
+                            vertices[offset + NORMAL_OFFSET + 2] = vnArray[vn + 2];
+                        } else if (i < 2) {
+                            // -cross(b - a, c - a), same as Obj
+                            setNegatedCross(vArray, second, first, third, first, vertices, offset + NORMAL_OFFSET);
+                        } else {
+                            // -cross(v - first, v - previous), same as Obj
+                            setNegatedCross(vArray, v, first, v, previous, vertices, offset + NORMAL_OFFSET);
+                        }
+
+                        if (vt >= 0) {
+                            vertices[offset + ST_OFFSET] = vtArray[vt];
+                            vertices[offset + ST_OFFSET + 1] = -vtArray[vt + 1];
+                        } else {
+                            vertices[offset + ST_OFFSET + 1] = -0f;
+                        }
+                    }
+
+                    if (i >= 2)
+                        previous = v;
+                }
+            }
+        }
+    }
+
+    private float[] deinterleave(int offset, int size) {
+        int vertexCount = getVertexCount();
+        float[] array = new float[vertexCount * size];
+        for (int i = 0; i < vertexCount; i++)
+            System.arraycopy(interleavedArray, i * VERTEX_SIZE + offset, array, i * size, size);
+        return array;
+    }
+
+    private static int toIndex(int index, int count) {
+        // negative indices are relative to the end of the list
+        return index < 0 ? count + index : index - 1;
+    }
+
+    /**
+     * Sets -cross(a - b, c - d), evaluated in the same order as {@link ch.fhnw.comgr.vector.Vector3#cross}.
+     */
+    private static void setNegatedCross(float[] vArray, int a, int b, int c, int d, float[] target, int offset) {
+        float ax = vArray[a] - vArray[b];
+        float ay = vArray[a + 1] - vArray[b + 1];
+        float az = vArray[a + 2] - vArray[b + 2];
+        float bx = vArray[c] - vArray[d];
+        float by = vArray[c + 1] - vArray[d + 1];
+        float bz = vArray[c + 2] - vArray[d + 2];
+
+        target[offset] = (ay * bz - az * by) * -1;
+        target[offset + 1] = (az * bx - ax * bz) * -1;
+        target[offset + 2] = (ax * by - ay * bx) * -1;
+    }
+
+    static ByteBuffer map(String resourcePath) {
+        URL url = Objects.requireNonNull(MappedObj.class.getResource(resourcePath), resourcePath);
+
+        try {
+            if ("file".equals(url.getProtocol())) {
+                try (FileChannel channel = FileChannel.open(Path.of(url.toURI()), StandardOpenOption.READ)) {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+
+            // resources inside a jar can't be mapped
+            try (InputStream in = url.openStream()) {
+                return ByteBuffer.wrap(in.readAllBytes());
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ch.fhnw.comgr.obj;
 
 import ch.fhnw.comgr.texture.ColorTexture;
+import ch.fhnw.comgr.texture.ImageTexture;
 import ch.fhnw.comgr.texture.Texture;
 import ch.fhnw.comgr.vector.Vector2;
 import ch.fhnw.comgr.vector.Vector3;
@@ -13,6 +14,7 @@ public class Mtl {
     private Vector3 ks;
     private float ns;
     private Texture mapKd;
+    private String mapKdPath;
 
     public Mtl(Vector3 ka, Vector3 kd, Vector3 ks, float ns, Texture mapKd) {
         this.ka = ka;
@@ -64,6 +66,22 @@ public class Mtl {
 
     public void setMapKd(Texture mapKd) {
         this.mapKd = mapKd;
+        this.mapKdPath = null;
+    }
+
+    /**
+     * Loads the diffuse map from the image resource and remembers its path.
+     */
+    public void setMapKd(String resourcePath) {
+        this.mapKd = ImageTexture.ofResource(resourcePath);
+        this.mapKdPath = resourcePath;
+    }
+
+    /**
+     * Resource path of the diffuse map if it was loaded from an image, null otherwise.
+     */
+    public String getMapKdPath() {
+        return mapKdPath;
     }
 
     public Vector3 getAmbient(Vector2 st) {
@@ -1,5 +1,6 @@
 package ch.fhnw.comgr.obj;
 
+import ch.fhnw.comgr.mesh.Submesh;
 import ch.fhnw.comgr.mesh.Tri;
 import ch.fhnw.comgr.mesh.Vertex;
 import ch.fhnw.comgr.texture.ImageTexture;
@@ -19,7 +20,8 @@ public record Obj(
         List<Vector3> vList,
         List<Vector3> vnList,
         List<Vector2> vtList,
-        Map<String, Mtl> materials) {
+        Map<String, Mtl> materials,
+        List<Submesh> submeshes) {
 
     private Obj() {
         this(
@@ -28,12 +30,18 @@ public record Obj(
                 new ArrayList<>(),
                 new ArrayList<>(),
                 new ArrayList<>(),
-                new HashMap<>()
+                new HashMap<>(),
+                new ArrayList<>()
         );
     }
 
     private void parseFile(String filename) {
-        Mtl currentMaterial = Mtl.DEFAULT;
+        // triangles are collected per material in order of first use, so every material ends up as one submesh
+        Map<String, List<Tri>> trisByMaterial = new LinkedHashMap<>();
+        List<Tri> currentTris = null;
+        String currentMaterial = Submesh.NO_MATERIAL;
+        VertexMap vertexMap = new VertexMap(1024);
+        int corners = 0;
 
         try (
                 InputStream objStream = ImageTexture.class.getResourceAsStream("/obj/" + filename + ".obj");
@@ -72,9 +80,14 @@ public record Obj(
                         materials.putAll(mtlLib.materials());
                         break;
                     case "usemtl":
-                        currentMaterial = materials.get(parts[1]);
+                        currentMaterial = parts[1];
+                        currentTris = null;
                         break;
                     case "f":
+                        corners += parts.length - 1;
+                        if (currentTris == null)
+                            currentTris = trisByMaterial.computeIfAbsent(currentMaterial, material -> new ArrayList<>());
+
                         String[] a = parts[1].split("/");
                         String[] b = parts[2].split("/");
                         String[] c = parts[3].split("/");
@@ -107,9 +120,8 @@ public record Obj(
                             vnb = normal;
                         }
 
-                        int start = vertices.size();
-                        vertices.add(new Vertex(va, vta, vna));
-                        vertices.add(new Vertex(vb, vtb, vnb));
+                        int first = addVertex(vertexMap, a, new Vertex(va, vta, vna));
+                        int previous = addVertex(vertexMap, b, new Vertex(vb, vtb, vnb));
 
                         Vector3 vFirst = va;
                         Vector3 vPrevious = vb;
@@ -134,10 +146,11 @@ public record Obj(
                                 ).negate();
                             }
 
-                            vertices.add(new Vertex(v, vt, vn));
+                            int current = addVertex(vertexMap, elements, new Vertex(v, vt, vn));
                             vPrevious = v;
 
-                            tris.add(new Tri(start, start + i - 1, start + i - 2, currentMaterial));
+                            currentTris.add(new Tri(first, current, previous));
+                            previous = current;
                         }
 
                         break;
@@ -147,7 +160,60 @@ public record Obj(
             throw new RuntimeException(e);
         }
 
+        for (Map.Entry<String, List<Tri>> entry : trisByMaterial.entrySet()) {
+            submeshes.add(new Submesh(entry.getKey(), tris.size() * 3, entry.getValue().size() * 3));
+            tris.addAll(entry.getValue());
+        }
+
         System.out.println("tris: " + tris.size());
+        printDedupRatio(vertices.size(), corners);
+    }
+
+    /**
+     * Returns the index of the vertex for the given face corner. Corners with the same v/vt/vn indices share one
+     * vertex, corners without a normal get the face normal and always need their own vertex.
+     */
+    private int addVertex(VertexMap vertexMap, String[] elements, Vertex vertex) {
+        if (elements.length >= 3) {
+            int v = Integer.parseInt(elements[0]) - 1;
+            int vt = elements[1].isEmpty() ? -1 : Integer.parseInt(elements[1]) - 1;
+            int vn = Integer.parseInt(elements[2]) - 1;
+
+            int existing = vertexMap.putIfAbsent(v, vt, vn, vertices.size());
+            if (existing >= 0)
+                return existing;
+        }
+
+        vertices.add(vertex);
+        return vertices.size() - 1;
+    }
+
+    static void printDedupRatio(int vertexCount, int cornerCount) {
+        System.out.printf("vertices: %d for %d face corners (%.2fx dedup)%n",
+                vertexCount, cornerCount, vertexCount == 0 ? 1f : (float) cornerCount / vertexCount);
+    }
+
+    /**
+     * Returns position, normal and texture coordinates of every vertex interleaved in one array, in the layout
+     * described by {@link MappedObj#VERTEX_SIZE}.
+     */
+    public float[] getInterleavedArray() {
+        float[] interleavedArray = new float[vertices.size() * MappedObj.VERTEX_SIZE];
+
+        for (int i = 0; i < vertices.size(); i++) {
+            Vertex vertex = vertices.get(i);
+            int offset = i * MappedObj.VERTEX_SIZE;
+            interleavedArray[offset] = vertex.position().x();
+            interleavedArray[offset + 1] = vertex.position().y();
+            interleavedArray[offset + 2] = vertex.position().z();
+            interleavedArray[offset + 3] = vertex.normal().x();
+            interleavedArray[offset + 4] = vertex.normal().y();
+            interleavedArray[offset + 5] = vertex.normal().z();
+            interleavedArray[offset + 6] = vertex.st().x();
+            interleavedArray[offset + 7] = -vertex.st().y();
+        }
+
+        return interleavedArray;
     }
 
     public float[] getVertexArray() {
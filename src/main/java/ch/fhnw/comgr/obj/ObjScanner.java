@@ -0,0 +1,211 @@
+package ch.fhnw.comgr.obj;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte level tokenizer for OBJ/MTL files. Numbers are parsed in place without creating strings, only values that
+ * cannot be converted exactly with float arithmetic fall back to {@link Float#parseFloat(String)}.
+ */
+final class ObjScanner {
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+    private static final long MAX_EXACT_MANTISSA = 1 << 24;
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+
+    ObjScanner(ByteBuffer buffer, int position, int limit) {
+        this.buffer = buffer;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    ObjScanner(ByteBuffer buffer) {
+        this(buffer, 0, buffer.limit());
+    }
+
+    boolean hasMore() {
+        return position < limit;
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * Skips spaces and tabs, but not line breaks.
+     */
+    void skipBlanks() {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\t' && b != '\r')
+                return;
+            position++;
+        }
+    }
+
+    /**
+     * Advances to the first byte of the next line.
+     */
+    void nextLine() {
+        while (position < limit) {
+            if (buffer.get(position++) == '\n')
+                return;
+        }
+    }
+
+    boolean atLineEnd() {
+        skipBlanks();
+        return position >= limit || buffer.get(position) == '\n' || buffer.get(position) == '#';
+    }
+
+    byte peek() {
+        return position < limit ? buffer.get(position) : (byte) '\n';
+    }
+
+    void skip() {
+        position++;
+    }
+
+    /**
+     * Matches the given keyword at the current position. The keyword must be followed by a blank.
+     */
+    boolean keyword(String keyword) {
+        int length = keyword.length();
+        if (position + length >= limit)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(position + i) != keyword.charAt(i))
+                return false;
+        }
+        byte next = buffer.get(position + length);
+        if (next != ' ' && next != '\t')
+            return false;
+        position += length;
+        return true;
+    }
+
+    /**
+     * Reads the remainder of the line as trimmed string, used for names in {@code mtllib} and {@code usemtl}.
+     */
+    String rest() {
+        skipBlanks();
+        int start = position;
+        int end = start;
+        while (position < limit && buffer.get(position) != '\n') {
+            byte b = buffer.get(position++);
+            if (b != ' ' && b != '\t' && b != '\r')
+                end = position;
+        }
+        return string(start, end);
+    }
+
+    int parseInt() {
+        skipBlanks();
+        boolean negative = false;
+        byte b = peek();
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            position++;
+        }
+
+        int value = 0;
+        int start = position;
+        while (position < limit) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            value = value * 10 + digit;
+            position++;
+        }
+
+        if (position == start)
+            throw new NumberFormatException("Expected integer at byte " + position);
+
+        return negative ? -value : value;
+    }
+
+    float parseFloat() {
+        skipBlanks();
+        int start = position;
+
+        boolean negative = false;
+        byte b = peek();
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean anyDigits = false;
+
+        while (position < limit) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            anyDigits = true;
+            if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0)
+                    mantissaDigits++;
+            } else {
+                exponent++;
+                exact &= digit == 0;
+            }
+            position++;
+        }
+
+        if (peek() == '.') {
+            position++;
+            while (position < limit) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9)
+                    break;
+                anyDigits = true;
+                if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0)
+                        mantissaDigits++;
+                    exponent--;
+                } else {
+                    exact &= digit == 0;
+                }
+                position++;
+            }
+        }
+
+        b = peek();
+        if (anyDigits && (b == 'e' || b == 'E')) {
+            position++;
+            exponent += parseInt();
+        }
+
+        if (!anyDigits || !exact || mantissa > MAX_EXACT_MANTISSA || exponent < -10 || exponent > 10) {
+            // slow path for everything float arithmetic can't round correctly (and for nan/inf)
+            while (position < limit && !isBlank(buffer.get(position)) && buffer.get(position) != '/')
+                position++;
+            return Float.parseFloat(string(start, position));
+        }
+
+        // both operands are exact floats, so the single rounding step is the correctly rounded result
+        float value = exponent < 0
+                ? (float) mantissa / POWERS_OF_TEN[-exponent]
+                : (float) mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private String string(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,85 @@
+package ch.fhnw.comgr.obj;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from (v, vt, vn) index triples to vertex indices, used to weld face corners that refer
+ * to the same data. Keys and values live in flat int arrays, so lookups don't allocate.
+ */
+final class VertexMap {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    VertexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new int[capacity * 3];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Returns the vertex index stored for the triple, or stores the given index and returns -1 if there is none yet.
+     */
+    int putIfAbsent(int v, int vt, int vn, int vertex) {
+        if (size * 2 >= values.length)
+            grow();
+
+        int slot = hash(v, vt, vn) & mask;
+        while (values[slot] != EMPTY) {
+            int key = slot * 3;
+            if (keys[key] == v && keys[key + 1] == vt && keys[key + 2] == vn)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, v, vt, vn, vertex);
+        return EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(int slot, int v, int vt, int vn, int vertex) {
+        keys[slot * 3] = v;
+        keys[slot * 3 + 1] = vt;
+        keys[slot * 3 + 2] = vn;
+        values[slot] = vertex;
+        size++;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = values.length - 1;
+        size = 0;
+        Arrays.fill(values, EMPTY);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == EMPTY)
+                continue;
+
+            int v = oldKeys[i * 3];
+            int vt = oldKeys[i * 3 + 1];
+            int vn = oldKeys[i * 3 + 2];
+
+            int slot = hash(v, vt, vn) & mask;
+            while (values[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            insert(slot, v, vt, vn, oldValues[i]);
+        }
+    }
+
+    private static int hash(int v, int vt, int vn) {
+        int h = v * 0x9e3779b1 + vt * 0x85ebca77 + vn * 0xc2b2ae3d;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,152 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.mesh.Submesh;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL32.glDrawElementsInstancedBaseVertex;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
+
+/**
+ * Instanced draws of meshes in a {@link MeshArena}, collected as DrawElementsIndirectCommand structs and submitted
+ * together:
+ * <pre>
+ * struct { uint count; uint instanceCount; uint firstIndex; int baseVertex; uint baseInstance; }
+ * </pre>
+ * Every command can name a texture, runs of consecutive commands with the same texture are drawn after binding it.
+ * <p>
+ * With glMultiDrawElementsIndirect (GL 4.3 or ARB_multi_draw_indirect) and a baseInstance it honors (GL 4.2 or
+ * ARB_base_instance) the commands are uploaded to an indirect buffer once and every run is drawn with one call.
+ * Otherwise, as on the GL 4.1 contexts this code asks for, every command is a glDrawElementsInstancedBaseVertex, after
+ * pointing the instance attributes at its base instance.
+ * {@code -Dcomgr.multiDrawIndirect=false} forces the fallback.
+ */
+public final class DrawCommands {
+    private static final int COMMAND_SIZE = 5;
+
+    private final boolean indirect;
+    private final int buffer;
+    private IntBuffer commands = BufferUtils.createIntBuffer(COMMAND_SIZE * 64);
+    private Texture[] textures = new Texture[64];
+    private int count;
+
+    DrawCommands(boolean indirect, int buffer) {
+        this.indirect = indirect;
+        this.buffer = buffer;
+    }
+
+    public static DrawCommands create() {
+        boolean indirect = indirectSupported();
+        return new DrawCommands(indirect, indirect ? glGenBuffers() : 0);
+    }
+
+    /**
+     * Whether the context has glMultiDrawElementsIndirect, offsets the instance attributes by the baseInstance of a
+     * command and it isn't turned off. Without base instance every command would read the attributes of instance 0.
+     */
+    public static boolean indirectSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.glMultiDrawElementsIndirect != 0
+                && (caps.OpenGL42 || caps.GL_ARB_base_instance)
+                && Boolean.parseBoolean(System.getProperty("comgr.multiDrawIndirect", "true"));
+    }
+
+    public boolean indirect() {
+        return indirect;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void clear() {
+        commands.clear();
+        Arrays.fill(textures, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Adds a command for the submesh of the mesh, drawing instanceCount instances starting at firstInstance in the
+     * {@link InstanceBuffer}. Empty submeshes are skipped.
+     *
+     * @param texture bound to unit 0 for the command, null to keep the one that's bound
+     */
+    public void add(GpuMesh mesh, Submesh submesh, int firstInstance, int instanceCount, Texture texture) {
+        if (submesh.indexCount() == 0 || instanceCount == 0)
+            return;
+
+        if (commands.remaining() < COMMAND_SIZE) {
+            IntBuffer grown = BufferUtils.createIntBuffer(commands.capacity() * 2);
+            grown.put(commands.flip());
+            commands = grown;
+            textures = Arrays.copyOf(textures, textures.length * 2);
+        }
+
+        commands.put(submesh.indexCount())
+                .put(instanceCount)
+                .put(mesh.firstIndex() + submesh.firstIndex())
+                .put(mesh.baseVertex())
+                .put(firstInstance);
+        textures[count++] = texture;
+    }
+
+    /**
+     * Draws all commands in the order they were added with the instanced vao of the arena, which has to be bound with
+     * the program.
+     */
+    public void submit(MeshArena arena) {
+        if (count == 0)
+            return;
+
+        if (indirect) {
+            // the base instance of every command offsets the instance attributes
+            arena.setFirstInstance(0);
+            GlState.bindBuffer(GL_DRAW_INDIRECT_BUFFER, buffer);
+            glBufferData(GL_DRAW_INDIRECT_BUFFER, (long) commands.capacity() * Integer.BYTES, GL_STREAM_DRAW);
+            glBufferSubData(GL_DRAW_INDIRECT_BUFFER, 0, commands.flip());
+            commands.limit(commands.capacity());
+        }
+
+        int run = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i < count && textures[i] == textures[run])
+                continue;
+
+            if (textures[run] != null)
+                textures[run].bind();
+            if (indirect)
+                glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, (long) run * COMMAND_SIZE * Integer.BYTES, i - run, 0);
+            else
+                drawEach(arena, run, i);
+            run = i;
+        }
+    }
+
+    private void drawEach(MeshArena arena, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int command = i * COMMAND_SIZE;
+            arena.setFirstInstance(commands.get(command + 4));
+            glDrawElementsInstancedBaseVertex(GL_TRIANGLES, commands.get(command), GL_UNSIGNED_INT,
+                    (long) commands.get(command + 2) * Integer.BYTES, commands.get(command + 1), commands.get(command + 3));
+        }
+    }
+
+    public void delete() {
+        if (indirect) {
+            glDeleteBuffers(buffer);
+            GlState.deletedBuffer(buffer);
+        }
+    }
+}
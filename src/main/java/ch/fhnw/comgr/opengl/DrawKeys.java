@@ -0,0 +1,110 @@
+package ch.fhnw.comgr.opengl;
+
+import java.util.Arrays;
+
+/**
+ * The sort keys of the draws of a {@link RenderQueue}, with the layout described there, and their order after
+ * {@link #sort()}. Doesn't touch GL, all arrays are reused once they've grown to the number of draws.
+ */
+final class DrawKeys {
+    static final int MAX_LAYER = 15;
+
+    private static final int LAYER_SHIFT = 59;
+    private static final int TRANSPARENT_SHIFT = 58;
+    private static final int PROGRAM_BITS = 10;
+    private static final int TEXTURE_BITS = 12;
+    private static final int MESH_BITS = 12;
+    private static final int DEPTH_BITS = 24;
+    private static final int STATE_BITS = PROGRAM_BITS + TEXTURE_BITS + MESH_BITS;
+    private static final long DEPTH_MAX = (1L << DEPTH_BITS) - 1;
+
+    private long[] keys = new long[64];
+    private long[] sortedKeys = new long[64];
+    private int[] order = new int[64];
+    private int[] sortedOrder = new int[64];
+    private final int[] histogram = new int[256];
+    private int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds the key of a draw, the draws are numbered in the order they're added.
+     *
+     * @param depth distance to the camera relative to the far plane, clamped to 0..1
+     */
+    void add(int layer, boolean transparent, int program, int texture, int mesh, float depth) {
+        if (size == keys.length)
+            grow();
+
+        long quantizedDepth = (long) (Math.min(Math.max(depth, 0), 1) * DEPTH_MAX);
+        long state = (program & ((1L << PROGRAM_BITS) - 1)) << (TEXTURE_BITS + MESH_BITS)
+                | (texture & ((1L << TEXTURE_BITS) - 1)) << MESH_BITS
+                | mesh & ((1L << MESH_BITS) - 1);
+
+        long key = (long) layer << LAYER_SHIFT;
+        if (transparent)
+            key |= 1L << TRANSPARENT_SHIFT | (DEPTH_MAX - quantizedDepth) << STATE_BITS | state;
+        else
+            key |= state << DEPTH_BITS | quantizedDepth;
+        keys[size++] = key;
+    }
+
+    /**
+     * The draw at the sorted position.
+     */
+    int order(int position) {
+        return order[position];
+    }
+
+    /**
+     * Sorts the keys with an LSD radix sort over bytes, passes where all keys share the byte are skipped.
+     */
+    void sort() {
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+
+        for (int shift = 0; shift < Long.SIZE; shift += 8) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < size; i++)
+                histogram[(int) (keys[i] >>> shift) & 0xff]++;
+
+            // every key has the same byte, the pass wouldn't change the order
+            if (histogram[(int) (keys[0] >>> shift) & 0xff] == size)
+                continue;
+
+            int offset = 0;
+            for (int b = 0; b < histogram.length; b++) {
+                int count = histogram[b];
+                histogram[b] = offset;
+                offset += count;
+            }
+
+            for (int i = 0; i < size; i++) {
+                int target = histogram[(int) (keys[i] >>> shift) & 0xff]++;
+                sortedKeys[target] = keys[i];
+                sortedOrder[target] = order[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapOrder = order;
+            order = sortedOrder;
+            sortedOrder = swapOrder;
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        sortedKeys = new long[capacity];
+        order = new int[capacity];
+        sortedOrder = new int[capacity];
+    }
+}
@@ -0,0 +1,202 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.matrix.Mat3f;
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.mesh.Frustum;
+import ch.fhnw.comgr.mesh.Lod;
+import ch.fhnw.comgr.mesh.Submesh;
+import ch.fhnw.comgr.vector.Vector3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The draws of a frame of a {@link RenderQueue} without the GL calls: culls the objects as they're added, keeps their
+ * sort keys in {@link DrawKeys} and fills the {@link InstanceBuffer} and {@link DrawCommands} of the multi-draws, see
+ * {@link #batch(int)}. Uploading and drawing is left to the queue. All arrays are reused once they've grown to the
+ * number of draws.
+ */
+final class DrawList {
+    private SceneObject[] objects = new SceneObject[64];
+    private Mat4f[] models = new Mat4f[64];
+    private float[] scales = new float[64];
+    private int size;
+    private int culled;
+
+    private final DrawKeys keys = new DrawKeys();
+    private final InstanceBuffer instanceBuffer;
+    private final DrawCommands drawCommands;
+
+    private final Mat3f normalMatrix = new Mat3f();
+    private final Frustum frustum = new Frustum();
+
+    private Vector3 cameraPosition = Vector3.ZERO;
+    private float farPlaneDistance = 1;
+    private float pixelsPerUnit;
+
+    DrawList(InstanceBuffer instanceBuffer, DrawCommands drawCommands) {
+        this.instanceBuffer = instanceBuffer;
+        this.drawCommands = drawCommands;
+    }
+
+    /**
+     * See {@link RenderQueue#begin(Mat4f, Vector3, float, float)}.
+     */
+    void begin(Mat4f viewProjection, Vector3 cameraPosition, float farPlaneDistance, float pixelsPerUnit) {
+        frustum.set(viewProjection);
+        this.cameraPosition = cameraPosition;
+        this.farPlaneDistance = farPlaneDistance;
+        this.pixelsPerUnit = pixelsPerUnit;
+
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        culled = 0;
+        keys.clear();
+    }
+
+    /**
+     * See {@link RenderQueue#add(SceneObject, Mat4f, float, int)}.
+     */
+    void add(SceneObject object, Mat4f model, float scale, int layer) {
+        if (layer < 0 || layer > DrawKeys.MAX_LAYER)
+            throw new IllegalArgumentException("layer " + layer + " not in 0.." + DrawKeys.MAX_LAYER);
+
+        GpuMesh mesh = object.mesh();
+        if (!frustum.intersects(mesh.bounds(), mesh.box(), model)) {
+            culled++;
+            return;
+        }
+
+        if (size == objects.length)
+            grow();
+
+        if (models[size] == null)
+            models[size] = new Mat4f();
+
+        objects[size] = object;
+        models[size].set(model);
+        scales[size] = scale;
+        addKey(object, model, layer);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int culled() {
+        return culled;
+    }
+
+    Vector3 cameraPosition() {
+        return cameraPosition;
+    }
+
+    float pixelsPerUnit() {
+        return pixelsPerUnit;
+    }
+
+    /**
+     * Sorts the draws by their keys, the accessors below take sorted positions from then on.
+     */
+    void sort() {
+        keys.sort();
+    }
+
+    SceneObject object(int position) {
+        return objects[keys.order(position)];
+    }
+
+    Mat4f model(int position) {
+        return models[keys.order(position)];
+    }
+
+    float scale(int position) {
+        return scales[keys.order(position)];
+    }
+
+    /**
+     * Fills the instance buffer and draw commands with the objects from sorted position start on that can be drawn
+     * together with the first one, returns the position after them. Every run of the same mesh and level of detail
+     * adds one command per submesh, with the texture of its material. Runs of objects with their own color share one
+     * instance per object between the submeshes, the others get one per object and submesh with the diffuse color of
+     * the material.
+     */
+    int batch(int start) {
+        SceneObject first = object(start);
+        instanceBuffer.clear();
+        drawCommands.clear();
+
+        int i = start;
+        do {
+            int runStart = i;
+            SceneObject object = object(i);
+            Lod lod = object.selectLod(cameraPosition, scale(i), pixelsPerUnit);
+            do {
+                i++;
+            } while (i < size && canInstance(object, lod, i));
+
+            int firstInstance = instanceBuffer.count();
+            if (object.color() != null)
+                addInstances(runStart, i, null);
+
+            List<Submesh> submeshes = lod.submeshes();
+            for (int j = 0; j < submeshes.size(); j++) {
+                Submesh submesh = submeshes.get(j);
+                Material material = object.materials().get(submesh.material());
+                if (object.color() == null && submesh.indexCount() > 0) {
+                    firstInstance = instanceBuffer.count();
+                    addInstances(runStart, i, material);
+                }
+                drawCommands.add(object.mesh(), submesh, firstInstance, i - runStart, object.texture(material));
+            }
+        } while (i < size && canMultiDraw(first, i));
+
+        return i;
+    }
+
+    /**
+     * Adds an instance for each object from sorted position start to end, with the color for the material.
+     */
+    private void addInstances(int start, int end, Material material) {
+        for (int i = start; i < end; i++) {
+            Mat4f model = model(i);
+            instanceBuffer.add(model, model.adjugate3x3(normalMatrix), object(i).color(material));
+        }
+    }
+
+    private boolean canMultiDraw(SceneObject first, int position) {
+        SceneObject object = object(position);
+        return object.program() == first.program()
+                && object.texture() == first.texture()
+                && object.transparent() == first.transparent()
+                && object.mesh().arena() == first.mesh().arena();
+    }
+
+    private boolean canInstance(SceneObject first, Lod lod, int position) {
+        SceneObject object = object(position);
+        return object.program() == first.program()
+                && object.mesh() == first.mesh()
+                && object.texture() == first.texture()
+                && object.transparent() == first.transparent()
+                && (object.color() == null) == (first.color() == null)
+                && object.selectLod(cameraPosition, scale(position), pixelsPerUnit) == lod;
+    }
+
+    private void addKey(SceneObject object, Mat4f model, int layer) {
+        float dx = model.m41 - cameraPosition.x();
+        float dy = model.m42 - cameraPosition.y();
+        float dz = model.m43 - cameraPosition.z();
+        float depth = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / farPlaneDistance;
+
+        int texture = object.texture() != null ? object.texture().texture() : 0;
+        keys.add(layer, object.transparent(), object.program().program(), texture, object.mesh().id(), depth);
+    }
+
+    private void grow() {
+        int capacity = objects.length * 2;
+        objects = Arrays.copyOf(objects, capacity);
+        models = Arrays.copyOf(models, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+    }
+}
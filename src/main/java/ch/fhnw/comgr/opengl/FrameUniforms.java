@@ -0,0 +1,99 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.vector.Vec3f;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+
+/**
+ * The data every shader needs and that only changes once per frame, uploaded to a uniform buffer bound to
+ * {@link #BINDING}. {@link Program} connects the block {@value #BLOCK_NAME} of every program to that binding point.
+ * The shaders declare it as:
+ * <pre>
+ * layout(std140) uniform Frame {
+ *     mat4 viewMatrix;
+ *     mat4 projectionMatrix;
+ *     mat4 viewProjectionMatrix;
+ *     vec3 cameraPosition;
+ *     vec3 cameraDirection;
+ *     vec3 lightDirection;
+ *     float time;
+ * };
+ * </pre>
+ * The matrices are stored like the transposed matrices of {@link Program#setUniform(String, Mat4f)}, so the shaders
+ * use them the same way as before, {@code vec4(inPos, 1.0) * modelMatrix * viewProjectionMatrix}.
+ */
+public final class FrameUniforms {
+    public static final int BINDING = 0;
+    public static final String BLOCK_NAME = "Frame";
+
+    // std140: each mat4 takes 16 floats, each vec3 is aligned to 4 floats, time fills the last vec3
+    private static final int VIEW_OFFSET = 0;
+    private static final int PROJECTION_OFFSET = 16;
+    private static final int VIEW_PROJECTION_OFFSET = 32;
+    private static final int CAMERA_POSITION_OFFSET = 48;
+    private static final int CAMERA_DIRECTION_OFFSET = 52;
+    private static final int LIGHT_DIRECTION_OFFSET = 56;
+    private static final int TIME_OFFSET = 59;
+    private static final int SIZE = 60;
+
+    public final Mat4f view = new Mat4f();
+    public final Mat4f projection = new Mat4f();
+    public final Mat4f viewProjection = new Mat4f();
+    public final Vec3f cameraPosition = new Vec3f();
+    public final Vec3f cameraDirection = new Vec3f();
+    public final Vec3f lightDirection = new Vec3f();
+    public float time;
+
+    private final int buffer;
+    private final FloatBuffer data = BufferUtils.createFloatBuffer(SIZE);
+    private final Mat4f transposed = new Mat4f();
+
+    private FrameUniforms(int buffer) {
+        this.buffer = buffer;
+    }
+
+    public static FrameUniforms create() {
+        FrameUniforms frameUniforms = new FrameUniforms(glGenBuffers());
+
+        GlState.bindBuffer(GL_UNIFORM_BUFFER, frameUniforms.buffer);
+        glBufferData(GL_UNIFORM_BUFFER, (long) SIZE * Float.BYTES, GL_DYNAMIC_DRAW);
+        glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, frameUniforms.buffer);
+
+        return frameUniforms;
+    }
+
+    /**
+     * Uploads the current values, once per frame after updating them.
+     */
+    public void upload() {
+        transposed.set(view).transpose().get(data.position(VIEW_OFFSET));
+        transposed.set(projection).transpose().get(data.position(PROJECTION_OFFSET));
+        transposed.set(viewProjection).transpose().get(data.position(VIEW_PROJECTION_OFFSET));
+        put(CAMERA_POSITION_OFFSET, cameraPosition);
+        put(CAMERA_DIRECTION_OFFSET, cameraDirection);
+        put(LIGHT_DIRECTION_OFFSET, lightDirection);
+        data.put(TIME_OFFSET, time);
+
+        GlState.bindBuffer(GL_UNIFORM_BUFFER, buffer);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, data.clear());
+    }
+
+    public void delete() {
+        glDeleteBuffers(buffer);
+        GlState.deletedBuffer(buffer);
+    }
+
+    private void put(int offset, Vec3f v) {
+        data.put(offset, v.x).put(offset + 1, v.y).put(offset + 2, v.z);
+    }
+}
@@ -0,0 +1,270 @@
+package ch.fhnw.comgr.opengl;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_CULL_FACE;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glBlendFunc;
+import static org.lwjgl.opengl.GL11.glCullFace;
+import static org.lwjgl.opengl.GL11.glDepthFunc;
+import static org.lwjgl.opengl.GL11.glDepthMask;
+import static org.lwjgl.opengl.GL11.glDisable;
+import static org.lwjgl.opengl.GL11.glEnable;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+
+/**
+ * Cache of the GL state the renderer changes, so that binds and state changes are only forwarded to GL if they
+ * actually change something. All binds of programs, vaos, buffers and textures and the blend, depth and cull state
+ * have to go through this class, otherwise the cache gets out of sync with GL; {@link #invalidate()} makes it forget
+ * everything after code that didn't.
+ * <p>
+ * There is one GL context on one thread, so the state is static.
+ */
+public final class GlState {
+    private static final int UNKNOWN = -1;
+    private static final int TEXTURE_UNITS = 32;
+
+    private static int program;
+    private static int vao;
+    private static int arrayBuffer;
+    private static int elementArrayBuffer;
+    private static int activeTextureUnit;
+    private static final int[] textures = new int[TEXTURE_UNITS];
+
+    private static int blend;
+    private static int depthTest;
+    private static int cullFace;
+    private static int blendSrc;
+    private static int blendDst;
+    private static int depthFunc;
+    private static int depthMask;
+    private static int cullFaceMode;
+
+    private static int issued;
+    private static int elided;
+    private static int issuedLastFrame;
+    private static int elidedLastFrame;
+
+    static {
+        invalidate();
+    }
+
+    private GlState() {
+    }
+
+    /**
+     * Forgets the cached state, the next call of every kind goes to GL.
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        vao = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        elementArrayBuffer = UNKNOWN;
+        activeTextureUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        blend = UNKNOWN;
+        depthTest = UNKNOWN;
+        cullFace = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        depthFunc = UNKNOWN;
+        depthMask = UNKNOWN;
+        cullFaceMode = UNKNOWN;
+    }
+
+    public static void useProgram(int program) {
+        if (changed(GlState.program, program)) {
+            glUseProgram(program);
+            GlState.program = program;
+        }
+    }
+
+    public static void bindVertexArray(int vao) {
+        if (changed(GlState.vao, vao)) {
+            glBindVertexArray(vao);
+            GlState.vao = vao;
+            // the element buffer binding is part of the vao
+            elementArrayBuffer = UNKNOWN;
+        }
+    }
+
+    /**
+     * Binds a buffer to GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER, other targets aren't cached.
+     */
+    public static void bindBuffer(int target, int buffer) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (changed(arrayBuffer, buffer)) {
+                glBindBuffer(target, buffer);
+                arrayBuffer = buffer;
+            }
+        } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            if (changed(elementArrayBuffer, buffer)) {
+                glBindBuffer(target, buffer);
+                elementArrayBuffer = buffer;
+            }
+        } else {
+            issued++;
+            glBindBuffer(target, buffer);
+        }
+    }
+
+    /**
+     * Binds a GL_TEXTURE_2D texture to the texture unit (0 for GL_TEXTURE0). The unit also becomes the active one, so
+     * glTexImage2D etc. apply to the texture afterwards.
+     */
+    public static void bindTexture(int unit, int texture) {
+        activeTexture(unit);
+        if (changed(textures[unit], texture)) {
+            glBindTexture(GL_TEXTURE_2D, texture);
+            textures[unit] = texture;
+        }
+    }
+
+    public static void activeTexture(int unit) {
+        if (changed(activeTextureUnit, unit)) {
+            glActiveTexture(GL_TEXTURE0 + unit);
+            activeTextureUnit = unit;
+        }
+    }
+
+    /**
+     * Enables GL_BLEND, GL_DEPTH_TEST or GL_CULL_FACE, other capabilities aren't cached.
+     */
+    public static void enable(int capability) {
+        setCapability(capability, true);
+    }
+
+    public static void disable(int capability) {
+        setCapability(capability, false);
+    }
+
+    public static void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst) {
+            elided++;
+            return;
+        }
+
+        issued++;
+        glBlendFunc(src, dst);
+        blendSrc = src;
+        blendDst = dst;
+    }
+
+    public static void depthFunc(int func) {
+        if (changed(depthFunc, func)) {
+            glDepthFunc(func);
+            depthFunc = func;
+        }
+    }
+
+    public static void depthMask(boolean flag) {
+        if (changed(depthMask, flag ? 1 : 0)) {
+            glDepthMask(flag);
+            depthMask = flag ? 1 : 0;
+        }
+    }
+
+    public static void cullFace(int mode) {
+        if (changed(cullFaceMode, mode)) {
+            glCullFace(mode);
+            cullFaceMode = mode;
+        }
+    }
+
+    /**
+     * GL unbinds deleted objects, called by the delete methods so the cache doesn't keep a stale name that a new
+     * object could get.
+     */
+    static void deletedProgram(int program) {
+        if (GlState.program == program)
+            GlState.program = 0;
+    }
+
+    static void deletedVertexArray(int vao) {
+        if (GlState.vao == vao) {
+            GlState.vao = 0;
+            elementArrayBuffer = UNKNOWN;
+        }
+    }
+
+    static void deletedBuffer(int buffer) {
+        if (arrayBuffer == buffer)
+            arrayBuffer = 0;
+        if (elementArrayBuffer == buffer)
+            elementArrayBuffer = 0;
+    }
+
+    static void deletedTexture(int texture) {
+        for (int unit = 0; unit < TEXTURE_UNITS; unit++) {
+            if (textures[unit] == texture)
+                textures[unit] = 0;
+        }
+    }
+
+    /**
+     * Starts counting the calls of the next frame, the counts of the finished one are available through
+     * {@link #issuedLastFrame()} and {@link #elidedLastFrame()}.
+     */
+    public static void endFrame() {
+        issuedLastFrame = issued;
+        elidedLastFrame = elided;
+        issued = 0;
+        elided = 0;
+    }
+
+    /**
+     * Calls forwarded to GL during the last frame.
+     */
+    public static int issuedLastFrame() {
+        return issuedLastFrame;
+    }
+
+    /**
+     * Calls skipped because they wouldn't have changed anything during the last frame.
+     */
+    public static int elidedLastFrame() {
+        return elidedLastFrame;
+    }
+
+    private static void setCapability(int capability, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        int current = switch (capability) {
+            case GL_BLEND -> blend;
+            case GL_DEPTH_TEST -> depthTest;
+            case GL_CULL_FACE -> cullFace;
+            default -> UNKNOWN;
+        };
+
+        if (!changed(current, value))
+            return;
+
+        if (enabled)
+            glEnable(capability);
+        else
+            glDisable(capability);
+
+        switch (capability) {
+            case GL_BLEND -> blend = value;
+            case GL_DEPTH_TEST -> depthTest = value;
+            case GL_CULL_FACE -> cullFace = value;
+        }
+    }
+
+    private static boolean changed(int current, int value) {
+        if (current == value) {
+            elided++;
+            return false;
+        }
+        issued++;
+        return true;
+    }
+}
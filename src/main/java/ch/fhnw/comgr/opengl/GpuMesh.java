@@ -0,0 +1,65 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.mesh.BoundingBox;
+import ch.fhnw.comgr.mesh.BoundingSphere;
+import ch.fhnw.comgr.mesh.Lod;
+import ch.fhnw.comgr.obj.CachedMesh;
+import ch.fhnw.comgr.obj.Mtl;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mesh on the gpu, stored in a range of the shared buffers of a {@link MeshArena}. Since {@link Program} binds fixed
+ * attribute locations, the vaos of the arena work with every program. The indices contain all levels of detail of the
+ * mesh, each split into one range per material; the ranges of the levels are relative to {@link #firstIndex()}.
+ * <p>
+ * The bounding sphere and box are in model space and used for culling, see {@link RenderQueue}.
+ */
+public record GpuMesh(MeshArena arena, MeshArena.Allocation allocation, List<Lod> lods, BoundingSphere bounds, BoundingBox box, Map<String, Mtl> materials) {
+    /**
+     * Screen area per triangle the levels of detail aim for, in pixels.
+     */
+    public static final float PIXELS_PER_TRIANGLE = 8;
+
+    public static GpuMesh create(CachedMesh mesh, MeshArena arena) {
+        MeshArena.Allocation allocation = arena.allocate(mesh.vertexBuffer(), mesh.triangleBuffer());
+        return new GpuMesh(arena, allocation, mesh.lods(), mesh.bounds(), mesh.box(), mesh.materials());
+    }
+
+    /**
+     * Small number identifying the mesh among the live meshes of its arena.
+     */
+    public int id() {
+        return allocation.id();
+    }
+
+    public int baseVertex() {
+        return allocation.baseVertex();
+    }
+
+    public int firstIndex() {
+        return allocation.firstIndex();
+    }
+
+    public int triangleCount() {
+        return lods.get(0).triangleCount();
+    }
+
+    /**
+     * Picks the most detailed level that doesn't spend more than {@link #PIXELS_PER_TRIANGLE} on a triangle, given the
+     * radius of the bounding sphere on screen in pixels.
+     */
+    public Lod selectLod(float projectedRadius) {
+        float triangleBudget = (float) Math.PI * projectedRadius * projectedRadius / PIXELS_PER_TRIANGLE;
+        for (int i = 0; i < lods.size(); i++) {
+            if (lods.get(i).triangleCount() <= triangleBudget)
+                return lods.get(i);
+        }
+        return lods.get(lods.size() - 1);
+    }
+
+    public void delete() {
+        arena.free(allocation);
+    }
+}
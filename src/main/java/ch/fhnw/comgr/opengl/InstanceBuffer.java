@@ -0,0 +1,85 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.matrix.Mat3f;
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.vector.Vector3;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+
+/**
+ * Per-instance data of instanced draws in the layout of {@link VertexFormat#INSTANCE}. There is one buffer for all
+ * meshes, their instanced vaos read it with an attribute divisor of one. It's refilled for every batch, uploading
+ * orphans the previous contents so the driver doesn't have to wait for draws still using them.
+ */
+public final class InstanceBuffer {
+    /**
+     * Floats per instance: model matrix, normal matrix and color.
+     */
+    public static final int INSTANCE_SIZE = 16 + 9 + 3;
+
+    private final Vbo vbo;
+    private FloatBuffer data = BufferUtils.createFloatBuffer(INSTANCE_SIZE * 64);
+    private int count;
+
+    InstanceBuffer(Vbo vbo) {
+        this.vbo = vbo;
+    }
+
+    public static InstanceBuffer create() {
+        return new InstanceBuffer(new Vbo(glGenBuffers()));
+    }
+
+    public Vbo vbo() {
+        return vbo;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void clear() {
+        data.clear();
+        count = 0;
+    }
+
+    /**
+     * Appends an instance. The matrices are written column by column, so the shaders see the same matrices as with
+     * {@link Program#setUniform(String, Mat4f)} for the transposed model matrix and
+     * {@link Program#setUniform(String, Mat3f)} for the normal matrix.
+     */
+    public void add(Mat4f model, Mat3f normalMatrix, Vector3 color) {
+        if (data.remaining() < INSTANCE_SIZE) {
+            FloatBuffer grown = BufferUtils.createFloatBuffer(data.capacity() * 2);
+            grown.put(data.flip());
+            data = grown;
+        }
+
+        data.put(model.m11).put(model.m21).put(model.m31).put(model.m41)
+                .put(model.m12).put(model.m22).put(model.m32).put(model.m42)
+                .put(model.m13).put(model.m23).put(model.m33).put(model.m43)
+                .put(model.m14).put(model.m24).put(model.m34).put(model.m44);
+        data.put(normalMatrix.m11).put(normalMatrix.m12).put(normalMatrix.m13)
+                .put(normalMatrix.m21).put(normalMatrix.m22).put(normalMatrix.m23)
+                .put(normalMatrix.m31).put(normalMatrix.m32).put(normalMatrix.m33);
+        data.put(color.x()).put(color.y()).put(color.z());
+        count++;
+    }
+
+    public void upload() {
+        vbo.bind();
+        glBufferData(GL_ARRAY_BUFFER, (long) data.capacity() * Float.BYTES, GL_STREAM_DRAW);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, data.flip());
+        data.limit(data.capacity());
+    }
+
+    public void delete() {
+        vbo.delete();
+    }
+}
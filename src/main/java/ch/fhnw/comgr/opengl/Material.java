@@ -0,0 +1,18 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.obj.Mtl;
+import ch.fhnw.comgr.texture.ColorTexture;
+import ch.fhnw.comgr.vector.Vector3;
+
+/**
+ * The parameters of a {@link Mtl} the shaders use. A constant color map is folded into the diffuse color, only image
+ * maps become textures.
+ */
+public record Material(Vector3 diffuse, Texture texture) {
+    static Material create(Resources resources, Mtl mtl) {
+        if (mtl.getMapKd() instanceof ColorTexture colorTexture)
+            return new Material(mtl.getKd().multiply(colorTexture.color()), null);
+
+        return new Material(mtl.getKd(), resources.acquireTexture(mtl.getMapKd()));
+    }
+}
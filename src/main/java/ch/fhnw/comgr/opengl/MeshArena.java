@@ -0,0 +1,218 @@
+package ch.fhnw.comgr.opengl;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31.glCopyBufferSubData;
+
+/**
+ * One vertex buffer and one index buffer shared by all static meshes. Every mesh gets a range of each, its indices stay
+ * relative to its first vertex and are drawn with that as base vertex. Since all meshes use the same buffers, they are
+ * drawn with the same two vaos, so switching meshes needs no vao bind and whole passes fit into one multi-draw, see
+ * {@link DrawCommands}.
+ * <p>
+ * Ranges are handed out first fit and merged with their neighbours when freed. When a mesh doesn't fit, the buffers
+ * grow to at least twice their size and the old contents are copied over on the gpu.
+ */
+public final class MeshArena {
+    /**
+     * The ranges of a mesh, in vertices and indices.
+     *
+     * @param id small number unique among the live meshes, for sort keys
+     */
+    public record Allocation(int id, int baseVertex, int vertexCount, int firstIndex, int indexCount) {
+    }
+
+    private static final int VERTEX_BYTES = VertexFormat.POSITION_NORMAL_ST.stride();
+    // ids double when they run out, like the buffers
+    private static final int INITIAL_IDS = 1 << 10;
+
+    private final InstanceBuffer instanceBuffer;
+    private final Vao vao = Vao.create();
+    private final Vao instancedVao = Vao.create();
+    private final Ranges vertexRanges = new Ranges();
+    private final Ranges indexRanges = new Ranges();
+    private final Ranges ids = new Ranges();
+
+    private Vbo vertices;
+    private int indices;
+    private long instanceOffset;
+
+    private MeshArena(InstanceBuffer instanceBuffer) {
+        this.instanceBuffer = instanceBuffer;
+    }
+
+    public static MeshArena create(InstanceBuffer instanceBuffer, int vertexCapacity, int indexCapacity) {
+        MeshArena arena = new MeshArena(instanceBuffer);
+        arena.grow(vertexCapacity, indexCapacity);
+        arena.ids.grow(INITIAL_IDS);
+        return arena;
+    }
+
+    /**
+     * Vao reading the vertices of all meshes.
+     */
+    public Vao vao() {
+        return vao;
+    }
+
+    /**
+     * Vao reading the vertices of all meshes and the per-instance attributes of the {@link InstanceBuffer}.
+     */
+    public Vao instancedVao() {
+        return instancedVao;
+    }
+
+    /**
+     * Copies the vertices, interleaved like {@link VertexFormat#POSITION_NORMAL_ST}, and the indices into the arena.
+     */
+    public Allocation allocate(FloatBuffer vertexData, IntBuffer indexData) {
+        int vertexCount = vertexData.remaining() * Float.BYTES / VERTEX_BYTES;
+        int indexCount = indexData.remaining();
+
+        int baseVertex = vertexRanges.allocate(vertexCount);
+        int firstIndex = indexRanges.allocate(indexCount);
+        if (baseVertex < 0 || firstIndex < 0) {
+            if (baseVertex >= 0)
+                vertexRanges.free(baseVertex, vertexCount);
+            if (firstIndex >= 0)
+                indexRanges.free(firstIndex, indexCount);
+
+            grow(Math.max(vertexRanges.capacity * 2, vertexRanges.capacity + vertexCount),
+                    Math.max(indexRanges.capacity * 2, indexRanges.capacity + indexCount));
+            baseVertex = vertexRanges.allocate(vertexCount);
+            firstIndex = indexRanges.allocate(indexCount);
+        }
+
+        // the copy targets don't touch the element buffer of the bound vao
+        GlState.bindBuffer(GL_COPY_WRITE_BUFFER, vertices.vbo());
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long) baseVertex * VERTEX_BYTES, vertexData);
+        GlState.bindBuffer(GL_COPY_WRITE_BUFFER, indices);
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long) firstIndex * Integer.BYTES, indexData);
+
+        int id = ids.allocate(1);
+        if (id < 0) {
+            ids.grow(ids.capacity * 2);
+            id = ids.allocate(1);
+        }
+
+        return new Allocation(id, baseVertex, vertexCount, firstIndex, indexCount);
+    }
+
+    public void free(Allocation allocation) {
+        vertexRanges.free(allocation.baseVertex(), allocation.vertexCount());
+        indexRanges.free(allocation.firstIndex(), allocation.indexCount());
+        ids.free(allocation.id(), 1);
+    }
+
+    /**
+     * Makes the instanced vao read the per-instance attributes starting at the instance. Only needed where draws can't
+     * pass a base instance.
+     */
+    public void setFirstInstance(int firstInstance) {
+        long offset = (long) firstInstance * InstanceBuffer.INSTANCE_SIZE * Float.BYTES;
+        if (offset != instanceOffset) {
+            instanceOffset = offset;
+            instancedVao.addAttribPointers(instanceBuffer.vbo(), VertexFormat.INSTANCE, 1, offset);
+        }
+    }
+
+    public void delete() {
+        vao.delete();
+        instancedVao.delete();
+        vertices.delete();
+        glDeleteBuffers(indices);
+        GlState.deletedBuffer(indices);
+    }
+
+    private void grow(int vertexCapacity, int indexCapacity) {
+        Vbo newVertices = new Vbo(glGenBuffers());
+        int newIndices = glGenBuffers();
+        GlState.bindBuffer(GL_COPY_WRITE_BUFFER, newVertices.vbo());
+        glBufferData(GL_COPY_WRITE_BUFFER, (long) vertexCapacity * VERTEX_BYTES, GL_STATIC_DRAW);
+        GlState.bindBuffer(GL_COPY_WRITE_BUFFER, newIndices);
+        glBufferData(GL_COPY_WRITE_BUFFER, (long) indexCapacity * Integer.BYTES, GL_STATIC_DRAW);
+
+        if (vertices != null) {
+            copy(vertices.vbo(), newVertices.vbo(), (long) vertexRanges.capacity * VERTEX_BYTES);
+            copy(indices, newIndices, (long) indexRanges.capacity * Integer.BYTES);
+            vertices.delete();
+            glDeleteBuffers(indices);
+            GlState.deletedBuffer(indices);
+        }
+
+        vertices = newVertices;
+        indices = newIndices;
+        vertexRanges.grow(vertexCapacity);
+        indexRanges.grow(indexCapacity);
+
+        vao.setTris(indices);
+        vao.addAttribPointers(vertices, VertexFormat.POSITION_NORMAL_ST);
+        instancedVao.setTris(indices);
+        instancedVao.addAttribPointers(vertices, VertexFormat.POSITION_NORMAL_ST);
+        instancedVao.addAttribPointers(instanceBuffer.vbo(), VertexFormat.INSTANCE, 1, instanceOffset);
+    }
+
+    private static void copy(int from, int to, long size) {
+        GlState.bindBuffer(GL_COPY_READ_BUFFER, from);
+        GlState.bindBuffer(GL_COPY_WRITE_BUFFER, to);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, size);
+    }
+
+    /**
+     * Free ranges of [0, capacity), by start.
+     */
+    private static final class Ranges {
+        private final TreeMap<Integer, Integer> free = new TreeMap<>();
+        private int capacity;
+
+        /**
+         * Returns the start of the range, or -1 if no free range is large enough.
+         */
+        int allocate(int length) {
+            for (Map.Entry<Integer, Integer> range : free.entrySet()) {
+                int start = range.getKey();
+                int rangeLength = range.getValue();
+                if (rangeLength >= length) {
+                    free.remove(start);
+                    if (rangeLength > length)
+                        free.put(start + length, rangeLength - length);
+                    return start;
+                }
+            }
+            return -1;
+        }
+
+        void free(int start, int length) {
+            if (length == 0)
+                return;
+
+            Map.Entry<Integer, Integer> before = free.floorEntry(start);
+            if (before != null && before.getKey() + before.getValue() == start) {
+                start = before.getKey();
+                length += before.getValue();
+            }
+            Integer after = free.get(start + length);
+            if (after != null) {
+                free.remove(start + length);
+                length += after;
+            }
+            free.put(start, length);
+        }
+
+        void grow(int newCapacity) {
+            int oldCapacity = capacity;
+            capacity = newCapacity;
+            free(oldCapacity, newCapacity - oldCapacity);
+        }
+    }
+}
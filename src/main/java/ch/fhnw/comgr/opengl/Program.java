@@ -1,77 +1,161 @@
 package ch.fhnw.comgr.opengl;
 
 import ch.fhnw.comgr.Shader;
+import ch.fhnw.comgr.matrix.Mat3f;
+import ch.fhnw.comgr.matrix.Mat4f;
 import ch.fhnw.comgr.matrix.Matrix3x3;
 import ch.fhnw.comgr.matrix.Matrix4x4;
 import ch.fhnw.comgr.vector.Vector3;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.GL_TRUE;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL20.GL_ACTIVE_UNIFORMS;
 import static org.lwjgl.opengl.GL20.GL_FRAGMENT_SHADER;
 import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
 import static org.lwjgl.opengl.GL20.GL_VERTEX_SHADER;
 import static org.lwjgl.opengl.GL20.glAttachShader;
+import static org.lwjgl.opengl.GL20.glBindAttribLocation;
 import static org.lwjgl.opengl.GL20.glCreateProgram;
+import static org.lwjgl.opengl.GL20.glDeleteProgram;
+import static org.lwjgl.opengl.GL20.glGetActiveUniform;
+import static org.lwjgl.opengl.GL20.glGetAttribLocation;
 import static org.lwjgl.opengl.GL20.glGetProgramInfoLog;
 import static org.lwjgl.opengl.GL20.glGetProgrami;
 import static org.lwjgl.opengl.GL20.glGetUniformLocation;
 import static org.lwjgl.opengl.GL20.glLinkProgram;
-import static org.lwjgl.opengl.GL20.glUniform1f;
-import static org.lwjgl.opengl.GL20.glUniform1i;
-import static org.lwjgl.opengl.GL20.glUniform3fv;
-import static org.lwjgl.opengl.GL20.glUniformMatrix3fv;
-import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
-import static org.lwjgl.opengl.GL20.glUseProgram;
-
-public record Program(int program) {
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
+
+/**
+ * A linked shader program. The active uniforms are looked up once after linking, see {@link Uniform}. Instanced
+ * programs read the model matrix, normal matrix and color from the per-instance attributes of {@link VertexFormat#INSTANCE}
+ * instead of uniforms, regular programs from the per-draw uniform block of {@link RenderQueue}. The per-frame data
+ * comes from the uniform block of {@link FrameUniforms}.
+ * <p>
+ * Where {@link DrawCommands#indirectSupported() multi-draw indirect} with base instance is available both shaders are
+ * compiled with MULTI_DRAW defined, the regular shaders read instance attributes then too and all programs are
+ * instanced.
+ */
+public record Program(int program, Map<String, Uniform> uniforms, boolean instanced) {
+    private static final String MULTI_DRAW = "#define MULTI_DRAW";
+
     public static Program create(String vertexShaderName, String fragmentShaderName) {
-        Shader vertexShader = Shader.readFile(vertexShaderName, GL_VERTEX_SHADER);
-        Shader fragmentShader = Shader.readFile(fragmentShaderName, GL_FRAGMENT_SHADER);
+        return create(vertexShaderName, fragmentShaderName, null);
+    }
+
+    /**
+     * Creates the program with the prelude inserted at the top of the fragment shader, see
+     * {@link Shader#readFile(String, int, String)}.
+     */
+    public static Program create(String vertexShaderName, String fragmentShaderName, String fragmentPrelude) {
+        String vertexPrelude = DrawCommands.indirectSupported() ? MULTI_DRAW : null;
+        if (vertexPrelude != null)
+            fragmentPrelude = fragmentPrelude != null ? MULTI_DRAW + "\n" + fragmentPrelude : MULTI_DRAW;
+
+        Shader vertexShader = Shader.readFile(vertexShaderName, GL_VERTEX_SHADER, vertexPrelude);
+        Shader fragmentShader = Shader.readFile(fragmentShaderName, GL_FRAGMENT_SHADER, fragmentPrelude);
+
+        int program = glCreateProgram();
+
+        glAttachShader(program, vertexShader.shader());
+        glAttachShader(program, fragmentShader.shader());
+
+        // same locations in every program, so vaos can be shared between programs
+        for (VertexAttribute attribute : VertexFormat.POSITION_NORMAL_ST.attributes())
+            glBindAttribLocation(program, attribute.location(), attribute.name());
+        for (VertexAttribute attribute : VertexFormat.INSTANCE.attributes())
+            glBindAttribLocation(program, attribute.location(), attribute.name());
+
+        glLinkProgram(program);
+        if (glGetProgrami(program, GL_LINK_STATUS) != GL_TRUE)
+            throw new RuntimeException(glGetProgramInfoLog(program));
 
-        Program program = new Program(glCreateProgram());
+        // all programs read the per-frame data from the same buffer
+        int frameBlock = glGetUniformBlockIndex(program, FrameUniforms.BLOCK_NAME);
+        if (frameBlock != GL_INVALID_INDEX)
+            glUniformBlockBinding(program, frameBlock, FrameUniforms.BINDING);
+        int objectBlock = glGetUniformBlockIndex(program, RenderQueue.OBJECT_BLOCK_NAME);
+        if (objectBlock != GL_INVALID_INDEX)
+            glUniformBlockBinding(program, objectBlock, RenderQueue.OBJECT_BINDING);
 
-        glAttachShader(program.program, vertexShader.shader());
-        glAttachShader(program.program, fragmentShader.shader());
+        boolean instanced = glGetAttribLocation(program, "inModel") >= 0;
+        return new Program(program, Map.copyOf(activeUniforms(program)), instanced);
+    }
+
+    private static Map<String, Uniform> activeUniforms(int program) {
+        Map<String, Uniform> uniforms = new HashMap<>();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
 
-        glLinkProgram(program.program());
-        if (glGetProgrami(program.program(), GL_LINK_STATUS) != GL_TRUE)
-            throw new RuntimeException(glGetProgramInfoLog(program.program()));
+            int count = glGetProgrami(program, GL_ACTIVE_UNIFORMS);
+            for (int i = 0; i < count; i++) {
+                String name = glGetActiveUniform(program, i, size, type);
+                int location = glGetUniformLocation(program, name);
+                // uniforms in blocks don't have a location
+                if (location < 0)
+                    continue;
 
-        return program;
+                // arrays are reported as name[0], only their first element can be set
+                if (name.endsWith("[0]"))
+                    name = name.substring(0, name.length() - 3);
+                uniforms.put(name, new Uniform(program, name, location, type.get(0)));
+            }
+        }
+        return uniforms;
     }
 
     public void use() {
-        glUseProgram(program);
+        GlState.useProgram(program);
+    }
+
+    public void delete() {
+        glDeleteProgram(program);
+        GlState.deletedProgram(program);
+    }
+
+    /**
+     * Returns the handle of the uniform, or one that ignores all values if the program has no such uniform. Keep the
+     * handle to skip the name lookup.
+     */
+    public Uniform uniform(String name) {
+        return uniforms.getOrDefault(name, Uniform.MISSING);
     }
 
     public void setUniform(String name, int value) {
-        use();
-        glUniform1i(glGetUniformLocation(program, name), value);
+        uniform(name).set(value);
     }
 
     public void setUniform(String name, float value) {
-        use();
-        glUniform1f(glGetUniformLocation(program, name), value);
+        uniform(name).set(value);
     }
 
     public void setUniform(String name, Vector3 vector3) {
-        use();
-        glUniform3fv(glGetUniformLocation(program, name), vector3.toArray());
+        uniform(name).set(vector3);
     }
 
     public void setUniform(String name, Matrix3x3 matrix3x3) {
-        use();
-        glUniformMatrix3fv(glGetUniformLocation(program, name), false, matrix3x3.toArray());
+        uniform(name).set(matrix3x3);
     }
 
     public void setUniform(String name, Matrix4x4 matrix4x4) {
-        use();
-        glUniformMatrix4fv(glGetUniformLocation(program, name), false, matrix4x4.toArray());
+        uniform(name).set(matrix4x4);
+    }
+
+    public void setUniform(String name, Mat3f mat3f) {
+        uniform(name).set(mat3f);
+    }
+
+    public void setUniform(String name, Mat4f mat4f) {
+        uniform(name).set(mat4f);
     }
 
     public void setUniform(String name, Texture texture) {
-        use();
         setUniform(name, 0);
     }
 }
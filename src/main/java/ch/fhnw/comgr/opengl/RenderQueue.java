@@ -0,0 +1,211 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.matrix.Mat3f;
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.vector.Vector3;
+
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_TEST;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL30.glBindBufferRange;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+
+/**
+ * Collects the draws of a frame and submits them sorted by a 64 bit key, so that draws sharing state follow each other
+ * and overdraw stays low. From the most significant bit down the key holds:
+ * <pre>
+ *   63      unused, keeps the keys positive
+ *   62..59  layer, lower layers are drawn first
+ *   58      0 for opaque, 1 for transparent draws, opaque ones are drawn first
+ *   opaque:      program (10), texture (12), mesh (12), depth (24), front to back for early depth rejection
+ *   transparent: inverted depth (24), program (10), texture (12), mesh (12), back to front for correct blending
+ * </pre>
+ * Program and texture are represented by their GL names, meshes by their {@link GpuMesh#id()}, all small integers
+ * handed out in order; values beyond the bits of their field wrap around, which only costs state changes. The depth is
+ * the distance to the camera relative to the far plane.
+ * <p>
+ * The keys are sorted by {@link DrawKeys} with an LSD radix sort over bytes. All arrays are reused, so a frame doesn't
+ * allocate once the queue has grown to the number of draws.
+ * <p>
+ * Objects whose bounds are outside the view frustum are dropped when they're added, {@link #culled()} counts them.
+ * <p>
+ * Culling, the keys and filling the multi-draws happen in a {@link DrawList}, which doesn't touch GL, the queue only
+ * uploads and draws.
+ * <p>
+ * Objects with an instanced program, which are all objects where multi-draw indirect is available, are drawn in
+ * batches of {@link DrawCommands}. Their matrices and colors go to the {@link InstanceBuffer}, every command reads its
+ * instances from its base instance.
+ * <p>
+ * Only on the GL 4.1 fallback are there regular programs. The model and normal matrix of their draws go to a
+ * {@link StreamBuffer}, which the vertex shader reads as:
+ * <pre>
+ * layout(std140) uniform Object {
+ *     mat4 modelMatrix;
+ *     mat3 normalMatrix;
+ * };
+ * </pre>
+ * All matrices of a frame are written first, then each draw only binds its range of the buffer.
+ */
+public final class RenderQueue {
+    public static final int MAX_LAYER = DrawKeys.MAX_LAYER;
+    public static final int OBJECT_BINDING = 1;
+    public static final String OBJECT_BLOCK_NAME = "Object";
+
+    // std140 in bytes: the mat4 takes 16 floats, the mat3 three columns of 4 floats
+    private static final int OBJECT_NORMAL_OFFSET = 64;
+    private static final int OBJECT_SIZE = 112;
+
+    private int[] objectOffsets = new int[64];
+
+    private final InstanceBuffer instanceBuffer;
+    private final StreamBuffer objectData;
+    private final DrawCommands drawCommands;
+    private final DrawList draws;
+    private final int objectStride;
+
+    private final Mat3f normalMatrix = new Mat3f();
+
+    public RenderQueue(InstanceBuffer instanceBuffer) {
+        this.instanceBuffer = instanceBuffer;
+
+        // ranges bound to a uniform block have to start at a multiple of the alignment, usually 256 bytes
+        int alignment = glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT);
+        objectStride = (OBJECT_SIZE + alignment - 1) / alignment * alignment;
+        objectData = StreamBuffer.create(GL_UNIFORM_BUFFER, 1024 * objectStride);
+        drawCommands = DrawCommands.create();
+        draws = new DrawList(instanceBuffer, drawCommands);
+    }
+
+    /**
+     * Starts a new frame and drops the draws of the previous one.
+     *
+     * @param viewProjection objects outside its frustum are culled
+     * @param pixelsPerUnit  see {@link SceneObject#draw(Vector3, float, float)}
+     */
+    public void begin(Mat4f viewProjection, Vector3 cameraPosition, float farPlaneDistance, float pixelsPerUnit) {
+        draws.begin(viewProjection, cameraPosition, farPlaneDistance, pixelsPerUnit);
+    }
+
+    public void add(SceneObject object, Mat4f model, float scale) {
+        add(object, model, scale, 0);
+    }
+
+    /**
+     * Queues a draw of the object, unless it's outside the frustum. The model matrix is copied, scale is the one of
+     * {@link SceneObject#draw(Vector3, float, float)}.
+     */
+    public void add(SceneObject object, Mat4f model, float scale, int layer) {
+        draws.add(object, model, scale, layer);
+    }
+
+    /**
+     * Draws queued in this frame, the objects that passed culling.
+     */
+    public int size() {
+        return draws.size();
+    }
+
+    /**
+     * Objects dropped in this frame because they were outside the frustum.
+     */
+    public int culled() {
+        return draws.culled();
+    }
+
+    /**
+     * Sorts the queued draws and draws them. Opaque objects are drawn with depth writes and without blending,
+     * transparent ones with blending and without depth writes.
+     * <p>
+     * Consecutive objects with the same instanced program, texture and transparency are drawn together whatever their
+     * meshes and materials, with one {@link DrawCommands} submission, see {@link #multiDraw(int)}. Objects with a
+     * regular program get their modelMatrix and normalMatrix from the Object block and are drawn one by one. The view
+     * and projection come from {@link FrameUniforms}.
+     */
+    public void draw() {
+        draws.sort();
+        writeObjectData();
+
+        int i = 0;
+        while (i < draws.size()) {
+            SceneObject object = draws.object(i);
+            setState(object);
+
+            if (object.program().instanced()) {
+                i = multiDraw(i);
+                continue;
+            }
+
+            glBindBufferRange(GL_UNIFORM_BUFFER, OBJECT_BINDING, objectData.buffer(), objectOffsets[i], OBJECT_SIZE);
+            object.draw(draws.cameraPosition(), draws.scale(i), draws.pixelsPerUnit());
+            i++;
+        }
+
+        objectData.endFrame();
+    }
+
+    public void delete() {
+        objectData.delete();
+        drawCommands.delete();
+    }
+
+    /**
+     * Draws the objects from sorted position start on that can be drawn together with the first one with one
+     * {@link DrawCommands} submission, returns the position after them. See {@link DrawList#batch(int)}.
+     */
+    private int multiDraw(int start) {
+        int end = draws.batch(start);
+        instanceBuffer.upload();
+        draws.object(start).draw(drawCommands);
+        return end;
+    }
+
+    /**
+     * Writes the matrices of the regular draws in sorted order, one aligned range per draw.
+     */
+    private void writeObjectData() {
+        if (objectOffsets.length < draws.size())
+            objectOffsets = new int[Math.max(draws.size(), objectOffsets.length * 2)];
+
+        objectData.beginFrame(draws.size() * objectStride);
+        for (int i = 0; i < draws.size(); i++) {
+            if (draws.object(i).program().instanced())
+                continue;
+
+            Mat4f m = draws.model(i);
+            Mat3f n = m.adjugate3x3(normalMatrix);
+            int offset = objectData.allocate(OBJECT_SIZE, objectStride);
+            long address = objectData.address(offset);
+
+            // column major, the shader sees the same matrices as with the transposed uniform uploads before
+            putColumn(address, m.m11, m.m21, m.m31, m.m41);
+            putColumn(address + 16, m.m12, m.m22, m.m32, m.m42);
+            putColumn(address + 32, m.m13, m.m23, m.m33, m.m43);
+            putColumn(address + 48, m.m14, m.m24, m.m34, m.m44);
+            putColumn(address + OBJECT_NORMAL_OFFSET, n.m11, n.m12, n.m13, 0);
+            putColumn(address + OBJECT_NORMAL_OFFSET + 16, n.m21, n.m22, n.m23, 0);
+            putColumn(address + OBJECT_NORMAL_OFFSET + 32, n.m31, n.m32, n.m33, 0);
+            objectOffsets[i] = offset;
+        }
+        objectData.flush();
+    }
+
+    private static void putColumn(long address, float x, float y, float z, float w) {
+        memPutFloat(address, x);
+        memPutFloat(address + 4, y);
+        memPutFloat(address + 8, z);
+        memPutFloat(address + 12, w);
+    }
+
+    private static void setState(SceneObject object) {
+        if (object.transparent()) {
+            GlState.enable(GL_BLEND);
+            GlState.depthMask(false);
+        } else {
+            GlState.disable(GL_BLEND);
+            GlState.depthMask(true);
+        }
+        GlState.enable(GL_DEPTH_TEST);
+    }
+}
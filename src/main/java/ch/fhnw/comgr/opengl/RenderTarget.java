@@ -0,0 +1,136 @@
+package ch.fhnw.comgr.opengl;
+
+import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_S;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_T;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL11.glTexImage2D;
+import static org.lwjgl.opengl.GL11.glTexParameteri;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL30.GL_COLOR_ATTACHMENT0;
+import static org.lwjgl.opengl.GL30.GL_DEPTH_ATTACHMENT;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER_COMPLETE;
+import static org.lwjgl.opengl.GL30.GL_RENDERBUFFER;
+import static org.lwjgl.opengl.GL30.glBindFramebuffer;
+import static org.lwjgl.opengl.GL30.glBindRenderbuffer;
+import static org.lwjgl.opengl.GL30.glCheckFramebufferStatus;
+import static org.lwjgl.opengl.GL30.glDeleteFramebuffers;
+import static org.lwjgl.opengl.GL30.glDeleteRenderbuffers;
+import static org.lwjgl.opengl.GL30.glFramebufferRenderbuffer;
+import static org.lwjgl.opengl.GL30.glFramebufferTexture2D;
+import static org.lwjgl.opengl.GL30.glGenFramebuffers;
+import static org.lwjgl.opengl.GL30.glGenRenderbuffers;
+import static org.lwjgl.opengl.GL30.glRenderbufferStorage;
+
+/**
+ * An offscreen framebuffer with a color texture and an optional depth renderbuffer. Targets are handed out by a
+ * {@link RenderTargetPool}, which resizes them when the window size changes; in between their storage stays as it is.
+ */
+public final class RenderTarget {
+    /**
+     * Internal formats of the attachments, depthFormat 0 for a target without depth buffer.
+     */
+    public record Format(int colorFormat, int depthFormat) {
+    }
+
+    private final Format format;
+    private final int framebuffer;
+    private final int colorTexture;
+    private final int depthRenderbuffer;
+    private int width;
+    private int height;
+
+    private RenderTarget(Format format, int framebuffer, int colorTexture, int depthRenderbuffer) {
+        this.format = format;
+        this.framebuffer = framebuffer;
+        this.colorTexture = colorTexture;
+        this.depthRenderbuffer = depthRenderbuffer;
+    }
+
+    static RenderTarget create(Format format, int width, int height) {
+        int colorTexture = glGenTextures();
+        GlState.bindTexture(0, colorTexture);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+        int depthRenderbuffer = format.depthFormat() != 0 ? glGenRenderbuffers() : 0;
+
+        RenderTarget target = new RenderTarget(format, glGenFramebuffers(), colorTexture, depthRenderbuffer);
+        target.allocate(width, height);
+
+        // the attachments never change, resizing only replaces their storage, so one check is enough
+        glBindFramebuffer(GL_FRAMEBUFFER, target.framebuffer);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colorTexture, 0);
+        if (depthRenderbuffer != 0)
+            glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthRenderbuffer);
+
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        if (status != GL_FRAMEBUFFER_COMPLETE)
+            throw new RuntimeException("framebuffer incomplete: 0x" + Integer.toHexString(status));
+
+        return target;
+    }
+
+    public Format format() {
+        return format;
+    }
+
+    public int framebuffer() {
+        return framebuffer;
+    }
+
+    public int colorTexture() {
+        return colorTexture;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Renders into this target until the default framebuffer is bound again.
+     */
+    public void bind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+    }
+
+    void resize(int width, int height) {
+        if (width != this.width || height != this.height)
+            allocate(width, height);
+    }
+
+    void delete() {
+        glDeleteFramebuffers(framebuffer);
+        glDeleteTextures(colorTexture);
+        GlState.deletedTexture(colorTexture);
+        if (depthRenderbuffer != 0)
+            glDeleteRenderbuffers(depthRenderbuffer);
+    }
+
+    private void allocate(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        GlState.bindTexture(0, colorTexture);
+        glTexImage2D(GL_TEXTURE_2D, 0, format.colorFormat(), width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+
+        if (depthRenderbuffer != 0) {
+            glBindRenderbuffer(GL_RENDERBUFFER, depthRenderbuffer);
+            glRenderbufferStorage(GL_RENDERBUFFER, format.depthFormat(), width, height);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package ch.fhnw.comgr.opengl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out one {@link RenderTarget} per format, all of them as large as the framebuffer. {@link #resize(int, int)} is
+ * called from the window size callback and is the only place where the targets get new storage.
+ */
+public final class RenderTargetPool {
+    private final Map<RenderTarget.Format, RenderTarget> targets = new HashMap<>();
+    private int width = 1;
+    private int height = 1;
+
+    /**
+     * Returns the target of the format, creating it on first use. Keep the target, it stays valid across resizes.
+     */
+    public RenderTarget get(RenderTarget.Format format) {
+        return targets.computeIfAbsent(format, f -> RenderTarget.create(f, width, height));
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Sets the framebuffer size in pixels. Sizes of zero, as reported for minimized windows, are ignored so the targets
+     * stay complete.
+     */
+    public void resize(int width, int height) {
+        if (width <= 0 || height <= 0 || (width == this.width && height == this.height))
+            return;
+
+        this.width = width;
+        this.height = height;
+        for (RenderTarget target : targets.values())
+            target.resize(width, height);
+    }
+
+    public void delete() {
+        for (RenderTarget target : targets.values())
+            target.delete();
+        targets.clear();
+    }
+}
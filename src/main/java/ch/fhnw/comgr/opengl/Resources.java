@@ -0,0 +1,118 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.mesh.Submesh;
+import ch.fhnw.comgr.obj.CachedMesh;
+import ch.fhnw.comgr.obj.Mtl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares meshes, programs and textures between scene objects. Every asset is loaded, compiled or uploaded only once,
+ * no matter how many objects use it, and freed when the last of them is released.
+ */
+public final class Resources {
+    private final SharedCache<String, CachedMesh> meshes = new SharedCache<>(CachedMesh::load, mesh -> {
+    });
+    private final SharedCache<ProgramKey, Program> programs = new SharedCache<>(
+            key -> Program.create(key.vertexShaderFile(), key.fragmentShaderFile(), key.fragmentPrelude()), Program::delete);
+    private final SharedCache<String, GpuMesh> gpuMeshes = new SharedCache<>(this::createGpuMesh, GpuMesh::delete);
+    private final SharedCache<ch.fhnw.comgr.texture.Texture, Texture> textures = new SharedCache<>(Texture::create, Texture::delete);
+    private final InstanceBuffer instanceBuffer = InstanceBuffer.create();
+    private final MeshArena meshArena = MeshArena.create(instanceBuffer, 1 << 16, 1 << 18);
+
+    /**
+     * The buffer the instanced vaos of all meshes read their per-instance attributes from.
+     */
+    public InstanceBuffer instanceBuffer() {
+        return instanceBuffer;
+    }
+
+    /**
+     * The buffers all meshes are stored in.
+     */
+    public MeshArena meshArena() {
+        return meshArena;
+    }
+
+    public CachedMesh acquireMesh(String file) {
+        return meshes.acquire(file);
+    }
+
+    public void releaseMesh(CachedMesh mesh) {
+        meshes.release(mesh);
+    }
+
+    public GpuMesh acquireGpuMesh(String file) {
+        return gpuMeshes.acquire(file);
+    }
+
+    public void releaseGpuMesh(GpuMesh mesh) {
+        gpuMeshes.release(mesh);
+    }
+
+    public Program acquireProgram(String vertexShaderFile, String fragmentShaderFile) {
+        return acquireProgram(vertexShaderFile, fragmentShaderFile, null);
+    }
+
+    /**
+     * Programs are keyed by their files and the prelude of the fragment shader, so the same shaders compiled with
+     * different preludes are different programs.
+     */
+    public Program acquireProgram(String vertexShaderFile, String fragmentShaderFile, String fragmentPrelude) {
+        return programs.acquire(new ProgramKey(vertexShaderFile, fragmentShaderFile, fragmentPrelude));
+    }
+
+    public void releaseProgram(Program program) {
+        programs.release(program);
+    }
+
+    /**
+     * Texture objects are keyed by equality, so equal records like two identical checkerboards share one upload.
+     */
+    public Texture acquireTexture(ch.fhnw.comgr.texture.Texture textureObject) {
+        return textures.acquire(textureObject);
+    }
+
+    public void releaseTexture(Texture texture) {
+        textures.release(texture);
+    }
+
+    /**
+     * Creates the materials of all submeshes of the mesh, keyed by material name. Materials the mesh refers to but its
+     * libraries don't define are replaced by {@link Mtl#DEFAULT}.
+     */
+    public Map<String, Material> acquireMaterials(GpuMesh mesh) {
+        Map<String, Material> materials = new HashMap<>();
+        for (Submesh submesh : mesh.lods().get(0).submeshes()) {
+            materials.computeIfAbsent(submesh.material(),
+                    name -> Material.create(this, mesh.materials().getOrDefault(name, Mtl.DEFAULT)));
+        }
+        return materials;
+    }
+
+    public void releaseMaterials(Map<String, Material> materials) {
+        for (Material material : materials.values()) {
+            if (material.texture() != null)
+                releaseTexture(material.texture());
+        }
+    }
+
+    public void release(SceneObject sceneObject) {
+        releaseProgram(sceneObject.program());
+        releaseMaterials(sceneObject.materials());
+        releaseGpuMesh(sceneObject.mesh());
+        if (sceneObject.texture() != null)
+            releaseTexture(sceneObject.texture());
+    }
+
+    private GpuMesh createGpuMesh(String file) {
+        CachedMesh mesh = acquireMesh(file);
+        GpuMesh gpuMesh = GpuMesh.create(mesh, meshArena);
+        releaseMesh(mesh);
+        return gpuMesh;
+    }
+
+    private record ProgramKey(String vertexShaderFile, String fragmentShaderFile, String fragmentPrelude) {
+    }
+}
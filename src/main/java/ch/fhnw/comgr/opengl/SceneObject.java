@@ -1,73 +1,164 @@
 package ch.fhnw.comgr.opengl;
 
+import ch.fhnw.comgr.matrix.Mat3f;
+import ch.fhnw.comgr.matrix.Mat4f;
 import ch.fhnw.comgr.matrix.Matrix3x3;
 import ch.fhnw.comgr.matrix.Matrix4x4;
-import ch.fhnw.comgr.obj.Obj;
+import ch.fhnw.comgr.mesh.Lod;
+import ch.fhnw.comgr.mesh.Submesh;
 import ch.fhnw.comgr.vector.Vector3;
 
-import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
+import java.util.List;
+import java.util.Map;
 
-public record SceneObject(Program program, Vao vao, int triangleCount, Vector3 position, Texture texture) {
-    public static SceneObject create(String vertexShaderFile, String fragmentShaderFile, String file, Vector3 position, ch.fhnw.comgr.texture.Texture textureObject) {
-        Texture texture = Texture.create(textureObject);
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+
+/**
+ * An object in the scene. Program, mesh and texture come from {@link Resources} and are shared with all other objects
+ * using the same assets, so everything specific to one object (like its color) is set again before it's drawn.
+ * <p>
+ * The mesh is drawn with one call per material. The color and texture of the object, if set, override the ones of the
+ * materials, see {@link #color(Material)} and {@link #texture(Material)}.
+ * <p>
+ * Objects with an instanced program read their matrices and colors from instance attributes, they are drawn together
+ * with other objects and meshes by multi-draws, see {@link #draw(DrawCommands)}. Where multi-draw indirect is
+ * available every program is an instanced one, see {@link Program}.
+ * <p>
+ * Textures with {@link ch.fhnw.comgr.texture.Texture#glsl() GLSL} aren't baked, their source is compiled into the
+ * fragment shader with PROCEDURAL_TEXTURE defined instead. {@code -Dcomgr.proceduralTextures=false} bakes them too.
+ */
+public record SceneObject(Program program, GpuMesh mesh, Map<String, Material> materials, Vector3 position, Texture texture, Vector3 color, boolean transparent) {
+    private static final boolean PROCEDURAL_TEXTURES = Boolean.parseBoolean(System.getProperty("comgr.proceduralTextures", "true"));
+
+    public static SceneObject create(Resources resources, String vertexShaderFile, String fragmentShaderFile, String file, Vector3 position, ch.fhnw.comgr.texture.Texture textureObject) {
+        String glsl = PROCEDURAL_TEXTURES ? textureObject.glsl() : null;
+        if (glsl != null) {
+            Program program = resources.acquireProgram(vertexShaderFile, fragmentShaderFile, "#define PROCEDURAL_TEXTURE\n" + glsl);
+            return create(resources, program, file, position, null, null, true);
+        }
 
-        SceneObject sceneObject = create(vertexShaderFile, fragmentShaderFile, file, position, texture);
+        Texture texture = resources.acquireTexture(textureObject);
 
-        sceneObject.vao.bind();
+        SceneObject sceneObject = create(resources, resources.acquireProgram(vertexShaderFile, fragmentShaderFile), file, position, texture, null, true);
 
         sceneObject.setUniform("imageTexture", texture);
 
         return sceneObject;
     }
 
-    public static SceneObject create(String vertexShaderFile, String fragmentShaderFile, String file, Vector3 position, Vector3 color) {
-        SceneObject sceneObject = create(vertexShaderFile, fragmentShaderFile, file, position, (Texture) null);
+    public static SceneObject create(Resources resources, String vertexShaderFile, String fragmentShaderFile, String file, Vector3 position, Vector3 color) {
+        return create(resources, resources.acquireProgram(vertexShaderFile, fragmentShaderFile), file, position, null, color, false);
+    }
 
-        sceneObject.vao.bind();
-        sceneObject.setUniform("color", color);
+    /**
+     * @param textured whether the object has its own texture, baked or procedural, that replaces the ones of the
+     *                 materials. Procedural textures are opaque.
+     */
+    private static SceneObject create(Resources resources, Program program, String file, Vector3 position, Texture texture, Vector3 color, boolean textured) {
+        GpuMesh mesh = resources.acquireGpuMesh(file);
+        Map<String, Material> materials = resources.acquireMaterials(mesh);
 
-        return sceneObject;
+        // blended if any texture it's drawn with has transparent texels
+        boolean transparent = textured
+                ? texture != null && texture.transparent()
+                : materials.values().stream().anyMatch(material -> material.texture() != null && material.texture().transparent());
+
+        return new SceneObject(program, mesh, materials, position, texture, color, transparent);
     }
 
-    private static SceneObject create(String vertexShaderFile, String fragmentShaderFile, String file, Vector3 position, Texture texture) {
-        Program program = Program.create(vertexShaderFile, fragmentShaderFile);
-        program.use();
+    public void draw() {
+        draw(mesh.lods().get(0));
+    }
 
-        // load model
-        Obj object = Obj.parse(file);
+    /**
+     * Draws the level of detail that fits the size of the object on screen.
+     *
+     * @param scale         scale of the model matrix
+     * @param pixelsPerUnit height of the viewport in pixels divided by 2 tan(fov / 2), the size in pixels of one unit
+     *                      at distance one
+     */
+    public void draw(Vector3 cameraPosition, float scale, float pixelsPerUnit) {
+        draw(selectLod(cameraPosition, scale, pixelsPerUnit));
+    }
 
-        // set up a vao
-        Vao vao = Vao.create(program.program());
-        vao.bind();
-        vao.setTris(object.getTriangleArray());
+    /**
+     * The level of detail {@link #draw(Vector3, float, float)} draws.
+     */
+    public Lod selectLod(Vector3 cameraPosition, float scale, float pixelsPerUnit) {
+        // the object rotates around its position, so the sphere center can be anywhere within its offset around it
+        float dx = cameraPosition.x() - position.x();
+        float dy = cameraPosition.y() - position.y();
+        float dz = cameraPosition.z() - position.z();
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - mesh.bounds().center().magnitude() * scale;
+        float radius = mesh.bounds().radius() * scale;
+        float projectedRadius = distance > radius ? radius * pixelsPerUnit / distance : Float.POSITIVE_INFINITY;
+
+        return mesh.selectLod(projectedRadius);
+    }
 
-        // vertex positions
-        Vbo posVbo = Vbo.create(object.getVertexArray());
-        vao.addAttribPointer("inPos", 3, posVbo);
+    /**
+     * The color a submesh with the material is drawn with, the one of the object if it has one.
+     */
+    public Vector3 color(Material material) {
+        return color != null ? color : material.diffuse();
+    }
 
-        // normals
-        Vbo normalsVbo = Vbo.create(object.getNormalArray());
-        vao.addAttribPointer("inNormal", 3, normalsVbo);
+    /**
+     * The texture a submesh with the material needs bound in addition to the one of the object, null if there is none
+     * or the object's texture replaces it.
+     */
+    public Texture texture(Material material) {
+        return texture == null ? material.texture() : null;
+    }
 
-        // texture coordinates
-        Vbo stVbo = Vbo.create(object.getStArray());
-        vao.addAttribPointer("inSt", 2, stVbo);
+    /**
+     * Draws the commands with the program and texture of this object, only for objects with an instanced program.
+     * The commands may draw any mesh of the same arena and bind the textures of their materials, the per-instance data
+     * with the colors must already be uploaded to the {@link InstanceBuffer}.
+     */
+    public void draw(DrawCommands commands) {
+        program.use();
+        mesh.arena().instancedVao().bind();
+        // instanced programs multiply the instance colors with this one
+        program.setUniform("color", Vector3.ONE);
+        if (texture != null)
+            texture.bind();
 
-        return new SceneObject(program, vao, object.tris().size(), position, texture);
+        commands.submit(mesh.arena());
     }
 
-    public void draw() {
+    /**
+     * Draws the level of detail with the regular vao of the arena, one glDrawElementsBaseVertex per submesh. The model
+     * and normal matrix come from the Object block of {@link RenderQueue}.
+     */
+    private void draw(Lod lod) {
         program.use();
-        vao.bind();
+        mesh.arena().vao().bind();
 
-        if (texture != null) {
-            glActiveTexture(GL_TEXTURE0);
+        if (color != null)
+            program.setUniform("color", color);
+
+        if (texture != null)
             texture.bind();
-        }
 
-        glDrawElements(GL_TRIANGLES, triangleCount * 3, GL_UNSIGNED_INT, 0);
+        // the submeshes are sorted by material, so every material is bound once
+        List<Submesh> submeshes = lod.submeshes();
+        for (int i = 0; i < submeshes.size(); i++) {
+            Submesh submesh = submeshes.get(i);
+            if (submesh.indexCount() == 0)
+                continue;
+
+            Material material = materials.get(submesh.material());
+            if (color == null)
+                program.setUniform("color", material.diffuse());
+            Texture materialTexture = texture(material);
+            if (materialTexture != null)
+                materialTexture.bind();
+
+            long offset = (long) (mesh.firstIndex() + submesh.firstIndex()) * Integer.BYTES;
+            glDrawElementsBaseVertex(GL_TRIANGLES, submesh.indexCount(), GL_UNSIGNED_INT, offset, mesh.baseVertex());
+        }
     }
 
     public void setUniform(String name, Vector3 value) {
@@ -82,6 +173,14 @@ public record SceneObject(Program program, Vao vao, int triangleCount, Vector3 p
         program.setUniform(name, value);
     }
 
+    public void setUniform(String name, Mat3f value) {
+        program.setUniform(name, value);
+    }
+
+    public void setUniform(String name, Mat4f value) {
+        program.setUniform(name, value);
+    }
+
     public void setUniform(String name, Texture value) {
         program.setUniform(name, value);
     }
@@ -0,0 +1,63 @@
+package ch.fhnw.comgr.opengl;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reference counted cache, every {@link #acquire} of a key hands out the same value until all users released it
+ * again. The last release destroys the value.
+ */
+final class SharedCache<K, V> {
+    private final Function<K, V> factory;
+    private final Consumer<V> destructor;
+    private final Map<K, Entry<K, V>> entries = new HashMap<>();
+    private final Map<V, Entry<K, V>> entriesByValue = new IdentityHashMap<>();
+
+    SharedCache(Function<K, V> factory, Consumer<V> destructor) {
+        this.factory = factory;
+        this.destructor = destructor;
+    }
+
+    V acquire(K key) {
+        // no computeIfAbsent, the factory may acquire from other caches
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry<>(key, factory.apply(key));
+            entries.put(key, entry);
+            entriesByValue.put(entry.value, entry);
+        }
+
+        entry.references++;
+        return entry.value;
+    }
+
+    void release(V value) {
+        Entry<K, V> entry = entriesByValue.get(value);
+        if (entry == null)
+            throw new IllegalArgumentException("Not a shared resource: " + value);
+
+        if (--entry.references == 0) {
+            entries.remove(entry.key);
+            entriesByValue.remove(value);
+            destructor.accept(value);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private int references;
+
+        private Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package ch.fhnw.comgr.opengl;
+
+import org.lwjgl.opengl.GL;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.ARBBufferStorage.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.ARBBufferStorage.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.ARBBufferStorage.glBufferStorage;
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL30.GL_MAP_INVALIDATE_RANGE_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL32.GL_CONDITION_SATISFIED;
+import static org.lwjgl.opengl.GL32.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.GL_WAIT_FAILED;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+
+/**
+ * Ring buffer for data written by the cpu every frame and read by the gpu in the same frame. The buffer is split into
+ * {@link #FRAMES} regions, a frame writes into the next region while the gpu may still read the previous ones, and a
+ * fence per region makes sure the gpu is done with it before it's written again.
+ * <p>
+ * With ARB_buffer_storage the whole buffer stays mapped (persistent and coherent), so writes go straight to memory the
+ * gpu reads. Without it, or with {@code -Dcomgr.persistentMapping=false}, every frame maps its region unsynchronized,
+ * which is safe because of the fences, and unmaps it in {@link #flush()} before the draws use it.
+ * <p>
+ * Write through {@link org.lwjgl.system.MemoryUtil} at {@link #address(int)}.
+ */
+public final class StreamBuffer {
+    public static final int FRAMES = 3;
+
+    private static final long FENCE_TIMEOUT_NANOS = 1_000_000;
+
+    private final int target;
+    private final boolean persistent;
+    private final long[] fences = new long[FRAMES];
+
+    private int buffer;
+    private int regionSize;
+    private ByteBuffer mapped;
+    private long address;
+
+    private int region = FRAMES - 1;
+    private int used;
+    private boolean frameMapped;
+
+    private StreamBuffer(int target, boolean persistent) {
+        this.target = target;
+        this.persistent = persistent;
+    }
+
+    /**
+     * @param regionSize bytes per frame, the buffer grows if a frame needs more
+     */
+    public static StreamBuffer create(int target, int regionSize) {
+        boolean persistent = GL.getCapabilities().GL_ARB_buffer_storage
+                && Boolean.parseBoolean(System.getProperty("comgr.persistentMapping", "true"));
+
+        StreamBuffer streamBuffer = new StreamBuffer(target, persistent);
+        streamBuffer.allocate(regionSize);
+        return streamBuffer;
+    }
+
+    public int buffer() {
+        return buffer;
+    }
+
+    public boolean persistent() {
+        return persistent;
+    }
+
+    /**
+     * Moves on to the next region, waiting for the gpu if it still reads it, and makes sure the region has room for
+     * size bytes.
+     */
+    public void beginFrame(int size) {
+        region = (region + 1) % FRAMES;
+        waitForFence(region);
+        used = 0;
+
+        if (size > regionSize)
+            allocate(Integer.highestOneBit(size - 1) << 1);
+
+        if (!persistent) {
+            GlState.bindBuffer(target, buffer);
+            mapped = glMapBufferRange(target, regionOffset(), regionSize,
+                    GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT, mapped);
+            address = memAddress(mapped) - regionOffset();
+            frameMapped = true;
+        }
+    }
+
+    /**
+     * Reserves size bytes in the region of the current frame.
+     *
+     * @return the offset of the reserved bytes from the start of the buffer, a multiple of alignment
+     */
+    public int allocate(int size, int alignment) {
+        int start = (used + alignment - 1) / alignment * alignment;
+        if (start + size > regionSize)
+            throw new IllegalStateException("stream buffer region of " + regionSize + " bytes is full");
+
+        used = start + size;
+        return regionOffset() + start;
+    }
+
+    /**
+     * Address to write to for an offset returned by {@link #allocate}, only valid until {@link #flush()}.
+     */
+    public long address(int offset) {
+        return address + offset;
+    }
+
+    /**
+     * Makes the writes of this frame visible to the gpu, call before the draws that read them.
+     */
+    public void flush() {
+        if (frameMapped) {
+            GlState.bindBuffer(target, buffer);
+            glUnmapBuffer(target);
+            frameMapped = false;
+        }
+    }
+
+    /**
+     * Fences the region of this frame, call after the last draw that reads it.
+     */
+    public void endFrame() {
+        flush();
+        fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    public void delete() {
+        for (int i = 0; i < FRAMES; i++)
+            waitForFence(i);
+        glDeleteBuffers(buffer);
+        GlState.deletedBuffer(buffer);
+    }
+
+    private int regionOffset() {
+        return region * regionSize;
+    }
+
+    private void allocate(int regionSize) {
+        // a buffer created with glBufferStorage can't be resized, so replace it; the driver keeps the old one alive
+        // until the draws still using it are done
+        if (buffer != 0) {
+            glDeleteBuffers(buffer);
+            GlState.deletedBuffer(buffer);
+        }
+
+        this.regionSize = regionSize;
+        buffer = glGenBuffers();
+        GlState.bindBuffer(target, buffer);
+
+        long size = (long) regionSize * FRAMES;
+        if (persistent) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            glBufferStorage(target, size, flags);
+            mapped = glMapBufferRange(target, 0, size, flags);
+            address = memAddress(mapped);
+        } else {
+            glBufferData(target, size, GL_DYNAMIC_DRAW);
+        }
+    }
+
+    private void waitForFence(int region) {
+        long fence = fences[region];
+        if (fence == 0)
+            return;
+
+        while (true) {
+            int result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+            if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED)
+                break;
+            if (result == GL_WAIT_FAILED)
+                throw new RuntimeException("glClientWaitSync failed");
+        }
+
+        glDeleteSync(fence);
+        fences[region] = 0;
+    }
+}
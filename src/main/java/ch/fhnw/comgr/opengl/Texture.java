@@ -1,25 +1,80 @@
 package ch.fhnw.comgr.opengl;
 
+import ch.fhnw.comgr.texture.CompressedTexture;
 import ch.fhnw.comgr.texture.ImageTexture;
-import org.lwjgl.opengl.GL11;
+import ch.fhnw.comgr.texture.PixelFormat;
+import ch.fhnw.comgr.texture.Pixels;
+import ch.fhnw.comgr.texture.Srgb;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLCapabilities;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.List;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.EXTTextureSRGB.GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.EXTTextureSRGB.GL_COMPRESSED_SRGB_S3TC_DXT1_EXT;
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_BGR;
+import static org.lwjgl.opengl.GL12.GL_BGRA;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL12.GL_UNSIGNED_INT_8_8_8_8;
+import static org.lwjgl.opengl.GL12.GL_UNSIGNED_INT_8_8_8_8_REV;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
 import static org.lwjgl.opengl.GL21.GL_SRGB8;
 import static org.lwjgl.opengl.GL21.GL_SRGB8_ALPHA8;
 
-public record Texture(int texture) {
+/**
+ * A texture on the gpu. Transparent textures have texels with an alpha below one and need blending.
+ * <p>
+ * Images are uploaded as they are stored, sRGB encoded, into an sRGB texture, the gpu converts them to linear when
+ * they're sampled. The common {@link BufferedImage} types are copied from their raster in one go and described to GL
+ * by format and type, so no pixel is converted on the cpu. Only images with transparent pixels get a pass that
+ * premultiplies their colors by alpha, as the blending expects.
+ * <p>
+ * If the driver has S3TC, textures are block compressed instead, as BC1 or BC3 with a mip chain built on the cpu and
+ * cached on disk, see {@link CompressedTexture}. That's a quarter to an eighth of the memory of RGBA8.
+ * {@code -Dcomgr.textureCompression=false} uploads them uncompressed.
+ */
+public record Texture(int texture, boolean transparent) {
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("comgr.textureCompression", "true"));
+
+    /**
+     * How the pixels of an image are laid out in the upload buffer.
+     *
+     * @param alphaOffset byte offset of alpha within a pixel, -1 if the image has none
+     */
+    private record Layout(int internalFormat, int format, int type, int pixelSize, int alphaOffset) {
+    }
+
+    private static final Layout RGBA = new Layout(GL_SRGB8_ALPHA8, GL_RGBA, GL_UNSIGNED_BYTE, 4, 3);
 
     public static Texture create(ch.fhnw.comgr.texture.Texture textureObject) {
-        Texture texture = new Texture(glGenTextures());
+        if (textureObject instanceof ImageTexture imageTexture) {
+            BufferedImage image = imageTexture.image();
+            return canCompress(true)
+                    ? createCompressed(rgbaPixels(image), image.getWidth(), image.getHeight(), true)
+                    : create(image);
+        }
 
-        texture.bind();
+        // generated straight into the upload buffer, in parallel if the texture can write tiles
+        ByteBuffer pixels = BufferUtils.createByteBuffer(textureObject.getWidth() * textureObject.getHeight() * PixelFormat.RGBA8.pixelSize());
+        Pixels.writeParallel(textureObject, pixels, PixelFormat.RGBA8);
+        if (canCompress(false))
+            return createCompressed(pixels, textureObject.getWidth(), textureObject.getHeight(), false);
 
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        Texture texture = new Texture(glGenTextures(), hasTransparency(pixels));
+
+        texture.bind();
+        setParameters();
         glTexImage2D(
                 GL_TEXTURE_2D,
                 0,
@@ -29,21 +84,175 @@ public record Texture(int texture) {
                 0,
                 GL_RGBA,
                 GL_UNSIGNED_BYTE,
-                textureObject.getPixels()
+                pixels
         );
 
         GL30.glGenerateMipmap(GL_TEXTURE_2D);
 
-        texture.unbind();
+        return texture;
+    }
+
+    private static Texture create(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+        Layout layout = copyPixels(image, pixels);
+
+        boolean transparent = layout.alphaOffset() >= 0 && premultiply(pixels, layout);
+        Texture texture = new Texture(glGenTextures(), transparent);
+
+        texture.bind();
+        setParameters();
+        glTexImage2D(GL_TEXTURE_2D, 0, layout.internalFormat(), width, height, 0, layout.format(), layout.type(), pixels);
+
+        GL30.glGenerateMipmap(GL_TEXTURE_2D);
+
+        return texture;
+    }
+
+    /**
+     * Uploads the mip chain of the compressed pixels, see {@link CompressedTexture}.
+     */
+    private static Texture createCompressed(ByteBuffer rgbaPixels, int width, int height, boolean srgb) {
+        CompressedTexture compressed = CompressedTexture.load(rgbaPixels, width, height, srgb);
+        Texture texture = new Texture(glGenTextures(), compressed.transparent());
+
+        int internalFormat = switch (compressed.format()) {
+            case BC1 -> srgb ? GL_COMPRESSED_SRGB_S3TC_DXT1_EXT : GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+            case BC3 -> srgb ? GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT : GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+        };
+
+        texture.bind();
+        setParameters();
+        List<ByteBuffer> levels = compressed.levels();
+        for (int level = 0; level < levels.size(); level++)
+            glCompressedTexImage2D(GL_TEXTURE_2D, level, internalFormat, Math.max(1, width >> level), Math.max(1, height >> level), 0, levels.get(level));
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels.size() - 1);
 
         return texture;
     }
 
+    private static boolean canCompress(boolean srgb) {
+        GLCapabilities capabilities = GL.getCapabilities();
+        return COMPRESSION && capabilities.GL_EXT_texture_compression_s3tc && (!srgb || capabilities.GL_EXT_texture_sRGB);
+    }
+
+    /**
+     * The pixels of the image as premultiplied {@link PixelFormat#RGBA8}, but sRGB encoded.
+     */
+    private static ByteBuffer rgbaPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+        IntBuffer rgba = pixels.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            rgba.put(i, pixel & 0xff00ff00 | pixel >>> 16 & 0xff | (pixel & 0xff) << 16);
+        }
+
+        premultiply(pixels, RGBA);
+        return pixels;
+    }
+
+    private static void setParameters() {
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+    }
+
+    /**
+     * Copies the pixels of the image into the buffer, rows from top to bottom like {@link ImageTexture#getPixels()},
+     * and returns their layout.
+     */
+    private static Layout copyPixels(BufferedImage image, ByteBuffer pixels) {
+        boolean littleEndian = pixels.order() == ByteOrder.LITTLE_ENDIAN;
+        // sub images share the data of their parent, only whole rasters can be copied as they are
+        int type = image.getRaster().getParent() == null ? image.getType() : BufferedImage.TYPE_CUSTOM;
+
+        switch (type) {
+            case BufferedImage.TYPE_4BYTE_ABGR -> {
+                // bytes A, B, G, R, read as one native int that's R, G, B, A from the most significant byte down
+                pixels.put(((DataBufferByte) image.getRaster().getDataBuffer()).getData()).flip();
+                return littleEndian
+                        ? new Layout(GL_SRGB8_ALPHA8, GL_RGBA, GL_UNSIGNED_INT_8_8_8_8, 4, 0)
+                        : new Layout(GL_SRGB8_ALPHA8, GL_RGBA, GL_UNSIGNED_INT_8_8_8_8_REV, 4, 0);
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                pixels.put(((DataBufferByte) image.getRaster().getDataBuffer()).getData()).flip();
+                return new Layout(GL_SRGB8, GL_BGR, GL_UNSIGNED_BYTE, 3, -1);
+            }
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB -> {
+                pixels.asIntBuffer().put(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+                boolean alpha = type == BufferedImage.TYPE_INT_ARGB;
+                return new Layout(alpha ? GL_SRGB8_ALPHA8 : GL_SRGB8, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, 4,
+                        alpha ? (littleEndian ? 3 : 0) : -1);
+            }
+            default -> {
+                // indexed, grey and other images: let the color model convert them, still in one call
+                int width = image.getWidth();
+                int height = image.getHeight();
+                pixels.asIntBuffer().put(image.getRGB(0, 0, width, height, null, 0, width));
+                return new Layout(GL_SRGB8_ALPHA8, GL_BGRA, GL_UNSIGNED_INT_8_8_8_8_REV, 4, littleEndian ? 3 : 0);
+            }
+        }
+    }
+
+    /**
+     * Multiplies the colors of all pixels that aren't opaque by their alpha, in linear space.
+     *
+     * @return whether there was any such pixel
+     */
+    private static boolean premultiply(ByteBuffer pixels, Layout layout) {
+        boolean transparent = false;
+        int pixelSize = layout.pixelSize();
+        int alphaOffset = layout.alphaOffset();
+
+        for (int pixel = 0; pixel < pixels.limit(); pixel += pixelSize) {
+            int alpha = pixels.get(pixel + alphaOffset) & 0xff;
+            if (alpha == 0xff)
+                continue;
+
+            transparent = true;
+            float scale = alpha / 255f;
+            for (int channel = 0; channel < pixelSize; channel++) {
+                if (channel == alphaOffset)
+                    continue;
+                int index = pixel + channel;
+                pixels.put(index, Srgb.fromLinear(Srgb.toLinear(pixels.get(index)) * scale));
+            }
+        }
+        return transparent;
+    }
+
+    private static boolean hasTransparency(ByteBuffer rgbaPixels) {
+        for (int alpha = 3; alpha < rgbaPixels.limit(); alpha += 4) {
+            if (rgbaPixels.get(alpha) != (byte) 0xff)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Binds the texture to texture unit 0.
+     */
     public void bind() {
-        glBindTexture(GL_TEXTURE_2D, texture);
+        bind(0);
+    }
+
+    public void bind(int unit) {
+        GlState.bindTexture(unit, texture);
     }
 
     public void unbind() {
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GlState.bindTexture(0, 0);
+    }
+
+    public void delete() {
+        glDeleteTextures(texture);
+        GlState.deletedTexture(texture);
     }
 }
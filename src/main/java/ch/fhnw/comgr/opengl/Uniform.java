@@ -0,0 +1,242 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.matrix.Mat3f;
+import ch.fhnw.comgr.matrix.Mat4f;
+import ch.fhnw.comgr.matrix.Matrix3x3;
+import ch.fhnw.comgr.matrix.Matrix4x4;
+import ch.fhnw.comgr.vector.Vector3;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL20.GL_FLOAT_MAT3;
+import static org.lwjgl.opengl.GL20.GL_FLOAT_MAT4;
+import static org.lwjgl.opengl.GL20.GL_FLOAT_VEC2;
+import static org.lwjgl.opengl.GL20.GL_FLOAT_VEC3;
+import static org.lwjgl.opengl.GL20.GL_FLOAT_VEC4;
+import static org.lwjgl.opengl.GL41.glProgramUniform1f;
+import static org.lwjgl.opengl.GL41.glProgramUniform1i;
+import static org.lwjgl.opengl.GL41.glProgramUniform3f;
+import static org.lwjgl.opengl.GL41.glProgramUniformMatrix3fv;
+import static org.lwjgl.opengl.GL41.glProgramUniformMatrix4fv;
+
+/**
+ * An active uniform of a {@link Program}, found when the program is linked. It keeps the last value uploaded and
+ * skips uploads that wouldn't change anything, so setting constant values every frame costs a few comparisons.
+ * <p>
+ * The values are uploaded with glProgramUniform, the program doesn't have to be in use.
+ */
+public final class Uniform {
+    /**
+     * Stands in for names the program doesn't use (or the compiler optimized away), setting it does nothing, like
+     * setting location -1 in OpenGL.
+     */
+    static final Uniform MISSING = new Uniform(0, "", -1, GL_FLOAT);
+
+    private final int program;
+    private final String name;
+    private final int location;
+    private final int type;
+
+    // last uploaded value, ints are stored as their bits
+    private final float[] value;
+    private boolean uploaded;
+
+    // position while a new value is compared against the last one
+    private int cursor;
+    private boolean changed;
+
+    Uniform(int program, String name, int location, int type) {
+        this.program = program;
+        this.name = name;
+        this.location = location;
+        this.type = type;
+        this.value = new float[componentCount(type)];
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int location() {
+        return location;
+    }
+
+    /**
+     * GL type of the uniform, e.g. GL_FLOAT_VEC3 or GL_SAMPLER_2D.
+     */
+    public int type() {
+        return type;
+    }
+
+    /**
+     * For int, bool and sampler uniforms.
+     */
+    public void set(int v) {
+        if (location < 0)
+            return;
+        requireIntType();
+
+        begin();
+        put(Float.intBitsToFloat(v));
+        if (end())
+            glProgramUniform1i(program, location, v);
+    }
+
+    public void set(float v) {
+        if (location < 0)
+            return;
+        requireType(GL_FLOAT);
+
+        begin();
+        put(v);
+        if (end())
+            glProgramUniform1f(program, location, v);
+    }
+
+    public void set(float x, float y, float z) {
+        if (location < 0)
+            return;
+        requireType(GL_FLOAT_VEC3);
+
+        begin();
+        put(x);
+        put(y);
+        put(z);
+        if (end())
+            glProgramUniform3f(program, location, x, y, z);
+    }
+
+    public void set(Vector3 v) {
+        set(v.x(), v.y(), v.z());
+    }
+
+    public void set(Mat3f m) {
+        if (location < 0)
+            return;
+        requireType(GL_FLOAT_MAT3);
+
+        begin();
+        put(m.m11);
+        put(m.m12);
+        put(m.m13);
+        put(m.m21);
+        put(m.m22);
+        put(m.m23);
+        put(m.m31);
+        put(m.m32);
+        put(m.m33);
+        if (end())
+            glProgramUniformMatrix3fv(program, location, false, value);
+    }
+
+    public void set(Matrix3x3 m) {
+        if (location < 0)
+            return;
+        requireType(GL_FLOAT_MAT3);
+
+        begin();
+        put(m.m11());
+        put(m.m12());
+        put(m.m13());
+        put(m.m21());
+        put(m.m22());
+        put(m.m23());
+        put(m.m31());
+        put(m.m32());
+        put(m.m33());
+        if (end())
+            glProgramUniformMatrix3fv(program, location, false, value);
+    }
+
+    public void set(Mat4f m) {
+        if (location < 0)
+            return;
+        requireType(GL_FLOAT_MAT4);
+
+        begin();
+        put(m.m11);
+        put(m.m12);
+        put(m.m13);
+        put(m.m14);
+        put(m.m21);
+        put(m.m22);
+        put(m.m23);
+        put(m.m24);
+        put(m.m31);
+        put(m.m32);
+        put(m.m33);
+        put(m.m34);
+        put(m.m41);
+        put(m.m42);
+        put(m.m43);
+        put(m.m44);
+        if (end())
+            glProgramUniformMatrix4fv(program, location, false, value);
+    }
+
+    public void set(Matrix4x4 m) {
+        if (location < 0)
+            return;
+        requireType(GL_FLOAT_MAT4);
+
+        begin();
+        put(m.m11());
+        put(m.m12());
+        put(m.m13());
+        put(m.m14());
+        put(m.m21());
+        put(m.m22());
+        put(m.m23());
+        put(m.m24());
+        put(m.m31());
+        put(m.m32());
+        put(m.m33());
+        put(m.m34());
+        put(m.m41());
+        put(m.m42());
+        put(m.m43());
+        put(m.m44());
+        if (end())
+            glProgramUniformMatrix4fv(program, location, false, value);
+    }
+
+    private void begin() {
+        cursor = 0;
+        changed = !uploaded;
+    }
+
+    private void put(float v) {
+        // compare the bits, so ints stored as floats and NaNs compare correctly
+        if (Float.floatToRawIntBits(value[cursor]) != Float.floatToRawIntBits(v)) {
+            value[cursor] = v;
+            changed = true;
+        }
+        cursor++;
+    }
+
+    private boolean end() {
+        uploaded = true;
+        return changed;
+    }
+
+    private void requireType(int expected) {
+        if (type != expected)
+            throw new IllegalArgumentException("uniform " + name + " has type 0x" + Integer.toHexString(type) + ", not 0x" + Integer.toHexString(expected));
+    }
+
+    private void requireIntType() {
+        if (componentCount(type) != 1 || type == GL_FLOAT)
+            throw new IllegalArgumentException("uniform " + name + " has type 0x" + Integer.toHexString(type) + ", not an int, bool or sampler");
+    }
+
+    private static int componentCount(int type) {
+        return switch (type) {
+            case GL_FLOAT_VEC2 -> 2;
+            case GL_FLOAT_VEC3 -> 3;
+            case GL_FLOAT_VEC4 -> 4;
+            case GL_FLOAT_MAT3 -> 9;
+            case GL_FLOAT_MAT4 -> 16;
+            // float, int, bool and samplers, other types aren't supported by the setters
+            default -> 1;
+        };
+    }
+}
@@ -1,37 +1,66 @@
 package ch.fhnw.comgr.opengl;
 
+import java.nio.IntBuffer;
+
 import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
-import static org.lwjgl.opengl.GL15.glBindBuffer;
 import static org.lwjgl.opengl.GL15.glBufferData;
 import static org.lwjgl.opengl.GL15.glGenBuffers;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
 import static org.lwjgl.opengl.GL20.glGetAttribLocation;
 import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
 
+/**
+ * A vertex array object. Binds go through {@link GlState} and nothing is unbound after setting the vao up, so
+ * anything that binds an element buffer has to bind its own vao first.
+ */
 public record Vao(int program, int vao) {
     public static Vao create(int program) {
         return new Vao(program, glGenVertexArrays());
     }
 
+    /**
+     * Creates a vao that isn't tied to a program, it can only use {@link #addAttribPointers} with fixed locations.
+     */
+    public static Vao create() {
+        return create(0);
+    }
+
     public void bind() {
-        glBindVertexArray(vao);
+        GlState.bindVertexArray(vao);
     }
 
     public void unbind() {
-        glBindVertexArray(0);
+        GlState.bindVertexArray(0);
+    }
+
+    public void delete() {
+        glDeleteVertexArrays(vao);
+        GlState.deletedVertexArray(vao);
     }
 
     public void setTris(int[] tris) {
         bind();
 
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, glGenBuffers());
+        GlState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, glGenBuffers());
         glBufferData(GL_ELEMENT_ARRAY_BUFFER, tris, GL_STATIC_DRAW);
+    }
 
-        unbind();
+    /**
+     * Returns the name of the element buffer.
+     */
+    public int setTris(IntBuffer tris) {
+        bind();
+
+        int ibo = glGenBuffers();
+        GlState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, tris, GL_STATIC_DRAW);
+
+        return ibo;
     }
 
     public void addAttribPointer(String name, int size, Vbo vbo) {
@@ -43,8 +72,47 @@ public record Vao(int program, int vao) {
             glEnableVertexAttribArray(attribIndex);
             glVertexAttribPointer(attribIndex, size, GL_FLOAT, false, 0, 0);
         }
+    }
 
-        vbo.unbind();
-        unbind();
+    /**
+     * Uses an existing element buffer, e.g. the one of another vao of the same mesh.
+     */
+    public void setTris(int ibo) {
+        bind();
+        GlState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+    }
+
+    /**
+     * Binds all attributes of the format to the interleaved vbo, using the fixed attribute locations.
+     */
+    public void addAttribPointers(Vbo vbo, VertexFormat format) {
+        addAttribPointers(vbo, format, 0);
+    }
+
+    /**
+     * Same as {@link #addAttribPointers(Vbo, VertexFormat)}, with divisor 1 the attributes advance once per instance
+     * instead of once per vertex.
+     */
+    public void addAttribPointers(Vbo vbo, VertexFormat format, int divisor) {
+        addAttribPointers(vbo, format, divisor, 0);
+    }
+
+    /**
+     * Same as {@link #addAttribPointers(Vbo, VertexFormat, int)}, with the first element offset bytes into the vbo.
+     */
+    public void addAttribPointers(Vbo vbo, VertexFormat format, int divisor, long offset) {
+        bind();
+        vbo.bind();
+
+        for (VertexAttribute attribute : format.attributes()) {
+            int columns = attribute.columns();
+            int rows = attribute.size() / columns;
+            for (int column = 0; column < columns; column++) {
+                int location = attribute.location() + column;
+                glEnableVertexAttribArray(location);
+                glVertexAttribPointer(location, rows, attribute.type(), attribute.normalized(), format.stride(), offset + attribute.offset() + column * rows * Float.BYTES);
+                glVertexAttribDivisor(location, divisor);
+            }
+        }
     }
 }
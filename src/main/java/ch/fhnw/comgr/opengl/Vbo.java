@@ -1,9 +1,11 @@
 package ch.fhnw.comgr.opengl;
 
+import java.nio.FloatBuffer;
+
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
-import static org.lwjgl.opengl.GL15.glBindBuffer;
 import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
 import static org.lwjgl.opengl.GL15.glGenBuffers;
 
 public record Vbo(int vbo) {
@@ -12,16 +14,29 @@ public record Vbo(int vbo) {
 
         vbo.bind();
         glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
-        vbo.unbind();
+
+        return vbo;
+    }
+
+    public static Vbo create(FloatBuffer data) {
+        Vbo vbo = new Vbo(glGenBuffers());
+
+        vbo.bind();
+        glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
 
         return vbo;
     }
 
     public void bind() {
-        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        GlState.bindBuffer(GL_ARRAY_BUFFER, vbo);
     }
 
     public void unbind() {
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        GlState.bindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void delete() {
+        glDeleteBuffers(vbo);
+        GlState.deletedBuffer(vbo);
     }
 }
@@ -0,0 +1,17 @@
+package ch.fhnw.comgr.opengl;
+
+/**
+ * A single attribute inside an interleaved vertex, the offset is in bytes from the start of the vertex. The location
+ * is bound to the attribute name in every {@link Program}.
+ * <p>
+ * Sizes of 9 and 16 are 3x3 and 4x4 float matrices, which occupy one location per column.
+ */
+public record VertexAttribute(String name, int location, int size, int type, boolean normalized, int offset) {
+    public int columns() {
+        return switch (size) {
+            case 9 -> 3;
+            case 16 -> 4;
+            default -> 1;
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package ch.fhnw.comgr.opengl;
+
+import ch.fhnw.comgr.obj.MappedObj;
+
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+
+/**
+ * Layout of the vertices in one interleaved vbo, the stride is the size of a whole vertex in bytes.
+ */
+public record VertexFormat(int stride, List<VertexAttribute> attributes) {
+    /**
+     * The layout of {@link MappedObj#getInterleavedArray()}.
+     */
+    public static final VertexFormat POSITION_NORMAL_ST = new VertexFormat(
+            MappedObj.VERTEX_SIZE * Float.BYTES,
+            List.of(
+                    new VertexAttribute("inPos", 0, 3, GL_FLOAT, false, MappedObj.POSITION_OFFSET * Float.BYTES),
+                    new VertexAttribute("inNormal", 1, 3, GL_FLOAT, false, MappedObj.NORMAL_OFFSET * Float.BYTES),
+                    new VertexAttribute("inSt", 2, 2, GL_FLOAT, false, MappedObj.ST_OFFSET * Float.BYTES)
+            )
+    );
+
+    /**
+     * The per-instance data of {@link InstanceBuffer}, read once per instance. The matrices take one location per
+     * column, so inModel covers locations 3 to 6 and inNormalMatrix 7 to 9.
+     */
+    public static final VertexFormat INSTANCE = new VertexFormat(
+            InstanceBuffer.INSTANCE_SIZE * Float.BYTES,
+            List.of(
+                    new VertexAttribute("inModel", 3, 16, GL_FLOAT, false, 0),
+                    new VertexAttribute("inNormalMatrix", 7, 9, GL_FLOAT, false, 16 * Float.BYTES),
+                    new VertexAttribute("inColor", 10, 3, GL_FLOAT, false, 25 * Float.BYTES)
+            )
+    );
+}
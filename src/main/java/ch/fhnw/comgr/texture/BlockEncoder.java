@@ -0,0 +1,268 @@
+package ch.fhnw.comgr.texture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes RGBA8 pixels into BC1 (DXT1) or BC3 (DXT5) blocks of 4x4 pixels, see {@link CompressedTexture.Format}.
+ * <p>
+ * The two colors of a block are the ends of the principal axis of its pixels, refined once by least squares for the
+ * chosen indices. Alpha, for BC3, is spanned by the smallest and largest alpha of the block. Blocks at the right and
+ * bottom edge repeat the last column and row of the image.
+ * <p>
+ * An encoder keeps the scratch arrays of one block, use one per thread.
+ */
+public final class BlockEncoder {
+    // weight of the first color for the 4 indices of a four color block
+    private static final float[] WEIGHTS = {1, 0, 2 / 3f, 1 / 3f};
+
+    private final int[] red = new int[16];
+    private final int[] green = new int[16];
+    private final int[] blue = new int[16];
+    private final int[] alpha = new int[16];
+    private final int[] palette = new int[12];
+
+    // result of the last call to colorIndices
+    private int indices;
+    private int error;
+
+    // result of the last call to refine
+    private int refinedRed0, refinedGreen0, refinedBlue0, refinedRed1, refinedGreen1, refinedBlue1;
+
+    /**
+     * Encodes the block rows [fromBlockRow, toBlockRow) of the image. The pixels are read from rgba at absolute
+     * offsets from 0, the blocks are written to dst starting at the first block of fromBlockRow, also absolute.
+     */
+    public void encode(ByteBuffer rgba, int width, int height, CompressedTexture.Format format, ByteBuffer dst, int fromBlockRow, int toBlockRow) {
+        int blocksPerRow = (width + 3) / 4;
+        int blockSize = format.blockSize();
+
+        for (int blockRow = fromBlockRow; blockRow < toBlockRow; blockRow++) {
+            for (int blockColumn = 0; blockColumn < blocksPerRow; blockColumn++) {
+                load(rgba, width, height, blockColumn * 4, blockRow * 4);
+
+                int offset = (blockRow * blocksPerRow + blockColumn) * blockSize;
+                if (format == CompressedTexture.Format.BC3) {
+                    encodeAlpha(dst, offset);
+                    offset += 8;
+                }
+                encodeColor(dst, offset);
+            }
+        }
+    }
+
+    private void load(ByteBuffer rgba, int width, int height, int x, int y) {
+        for (int i = 0; i < 16; i++) {
+            int pixel = (Math.min(y + i / 4, height - 1) * width + Math.min(x + i % 4, width - 1)) * 4;
+            red[i] = rgba.get(pixel) & 0xff;
+            green[i] = rgba.get(pixel + 1) & 0xff;
+            blue[i] = rgba.get(pixel + 2) & 0xff;
+            alpha[i] = rgba.get(pixel + 3) & 0xff;
+        }
+    }
+
+    /**
+     * Writes the 8 bytes of a four color block: two RGB565 colors, the first one larger, and 2 bit indices.
+     */
+    private void encodeColor(ByteBuffer dst, int offset) {
+        float meanRed = 0, meanGreen = 0, meanBlue = 0;
+        for (int i = 0; i < 16; i++) {
+            meanRed += red[i];
+            meanGreen += green[i];
+            meanBlue += blue[i];
+        }
+        meanRed /= 16;
+        meanGreen /= 16;
+        meanBlue /= 16;
+
+        float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+        for (int i = 0; i < 16; i++) {
+            float r = red[i] - meanRed, g = green[i] - meanGreen, b = blue[i] - meanBlue;
+            rr += r * r;
+            rg += r * g;
+            rb += r * b;
+            gg += g * g;
+            gb += g * b;
+            bb += b * b;
+        }
+
+        // principal axis by power iteration, starting from the diagonal
+        float axisRed = 1, axisGreen = 1, axisBlue = 1;
+        for (int iteration = 0; iteration < 8; iteration++) {
+            float r = rr * axisRed + rg * axisGreen + rb * axisBlue;
+            float g = rg * axisRed + gg * axisGreen + gb * axisBlue;
+            float b = rb * axisRed + gb * axisGreen + bb * axisBlue;
+            float max = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+            if (max == 0)
+                break;
+            axisRed = r / max;
+            axisGreen = g / max;
+            axisBlue = b / max;
+        }
+
+        // the pixels furthest along the axis in both directions are the first guess for the colors
+        int first = 0, second = 0;
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 16; i++) {
+            float projection = red[i] * axisRed + green[i] * axisGreen + blue[i] * axisBlue;
+            if (projection > max) {
+                max = projection;
+                first = i;
+            }
+            if (projection < min) {
+                min = projection;
+                second = i;
+            }
+        }
+
+        int color0 = rgb565(red[first], green[first], blue[first]);
+        int color1 = rgb565(red[second], green[second], blue[second]);
+        colorIndices(color0, color1);
+
+        if (error > 0 && color0 != color1) {
+            int bestIndices = indices, bestError = error;
+            if (refine()) {
+                int refined0 = rgb565(refinedRed0, refinedGreen0, refinedBlue0);
+                int refined1 = rgb565(refinedRed1, refinedGreen1, refinedBlue1);
+                colorIndices(refined0, refined1);
+                if (error < bestError) {
+                    color0 = refined0;
+                    color1 = refined1;
+                } else {
+                    indices = bestIndices;
+                }
+            }
+        }
+
+        int blockIndices = indices;
+        if (color0 < color1) {
+            int swap = color0;
+            color0 = color1;
+            color1 = swap;
+            // index 0 and 1 swap, and so do the interpolated 2 and 3
+            blockIndices ^= 0x55555555;
+        } else if (color0 == color1) {
+            // equal colors select the three color mode, where index 3 would be black
+            blockIndices = 0;
+        }
+
+        dst.put(offset, (byte) color0);
+        dst.put(offset + 1, (byte) (color0 >>> 8));
+        dst.put(offset + 2, (byte) color1);
+        dst.put(offset + 3, (byte) (color1 >>> 8));
+        dst.put(offset + 4, (byte) blockIndices);
+        dst.put(offset + 5, (byte) (blockIndices >>> 8));
+        dst.put(offset + 6, (byte) (blockIndices >>> 16));
+        dst.put(offset + 7, (byte) (blockIndices >>> 24));
+    }
+
+    /**
+     * Picks the nearest of the four palette colors for every pixel, sets {@link #indices} and the summed squared
+     * {@link #error}.
+     */
+    private void colorIndices(int color0, int color1) {
+        int red0 = expand5(color0 >>> 11), green0 = expand6(color0 >>> 5 & 0x3f), blue0 = expand5(color0 & 0x1f);
+        int red1 = expand5(color1 >>> 11), green1 = expand6(color1 >>> 5 & 0x3f), blue1 = expand5(color1 & 0x1f);
+        setPalette(0, red0, green0, blue0);
+        setPalette(1, red1, green1, blue1);
+        setPalette(2, (2 * red0 + red1) / 3, (2 * green0 + green1) / 3, (2 * blue0 + blue1) / 3);
+        setPalette(3, (red0 + 2 * red1) / 3, (green0 + 2 * green1) / 3, (blue0 + 2 * blue1) / 3);
+
+        indices = 0;
+        error = 0;
+        for (int i = 0; i < 16; i++) {
+            int best = 0, bestDistance = Integer.MAX_VALUE;
+            for (int index = 0; index < 4; index++) {
+                int r = red[i] - palette[index * 3], g = green[i] - palette[index * 3 + 1], b = blue[i] - palette[index * 3 + 2];
+                int distance = r * r + g * g + b * b;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = index;
+                }
+            }
+            indices |= best << (i * 2);
+            error += bestDistance;
+        }
+    }
+
+    private void setPalette(int index, int r, int g, int b) {
+        palette[index * 3] = r;
+        palette[index * 3 + 1] = g;
+        palette[index * 3 + 2] = b;
+    }
+
+    /**
+     * The two colors that fit the pixels best for the current {@link #indices}, by least squares. False if the indices
+     * don't determine them, e.g. when all pixels use the same index.
+     */
+    private boolean refine() {
+        float aa = 0, ab = 0, bb = 0;
+        float redA = 0, greenA = 0, blueA = 0, redB = 0, greenB = 0, blueB = 0;
+        for (int i = 0; i < 16; i++) {
+            float a = WEIGHTS[indices >>> (i * 2) & 3], b = 1 - a;
+            aa += a * a;
+            ab += a * b;
+            bb += b * b;
+            redA += a * red[i];
+            greenA += a * green[i];
+            blueA += a * blue[i];
+            redB += b * red[i];
+            greenB += b * green[i];
+            blueB += b * blue[i];
+        }
+
+        float determinant = aa * bb - ab * ab;
+        if (Math.abs(determinant) < 1e-6f)
+            return false;
+
+        float inverse = 1 / determinant;
+        refinedRed0 = clampByte((bb * redA - ab * redB) * inverse);
+        refinedGreen0 = clampByte((bb * greenA - ab * greenB) * inverse);
+        refinedBlue0 = clampByte((bb * blueA - ab * blueB) * inverse);
+        refinedRed1 = clampByte((aa * redB - ab * redA) * inverse);
+        refinedGreen1 = clampByte((aa * greenB - ab * greenA) * inverse);
+        refinedBlue1 = clampByte((aa * blueB - ab * blueA) * inverse);
+        return true;
+    }
+
+    /**
+     * Writes the 8 bytes of an eight value alpha block: the largest and smallest alpha and 3 bit indices.
+     */
+    private void encodeAlpha(ByteBuffer dst, int offset) {
+        int alpha0 = 0, alpha1 = 255;
+        for (int i = 0; i < 16; i++) {
+            alpha0 = Math.max(alpha0, alpha[i]);
+            alpha1 = Math.min(alpha1, alpha[i]);
+        }
+
+        long blockIndices = 0;
+        if (alpha0 > alpha1) {
+            for (int i = 0; i < 16; i++) {
+                // position between alpha0 (0) and alpha1 (7), mapped to the index order 0, 2, 3, ..., 7, 1
+                int step = Math.round((alpha0 - alpha[i]) * 7f / (alpha0 - alpha1));
+                long index = step == 0 ? 0 : step == 7 ? 1 : step + 1;
+                blockIndices |= index << (i * 3);
+            }
+        }
+
+        dst.put(offset, (byte) alpha0);
+        dst.put(offset + 1, (byte) alpha1);
+        for (int i = 0; i < 6; i++)
+            dst.put(offset + 2 + i, (byte) (blockIndices >>> (i * 8)));
+    }
+
+    private static int rgb565(int r, int g, int b) {
+        return (r * 31 + 127) / 255 << 11 | (g * 63 + 127) / 255 << 5 | (b * 31 + 127) / 255;
+    }
+
+    private static int expand5(int value) {
+        return value << 3 | value >>> 2;
+    }
+
+    private static int expand6(int value) {
+        return value << 2 | value >>> 4;
+    }
+
+    private static int clampByte(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+}
@@ -3,6 +3,9 @@ package ch.fhnw.comgr.texture;
 import ch.fhnw.comgr.vector.Vector2;
 import ch.fhnw.comgr.vector.Vector3;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
 import static ch.fhnw.comgr.vector.Vector3.BYTE_MAX_VALUE;
 
 public record CheckerboardTexture(int width, int height, float tileSize, Vector3 color0, Vector3 color1) implements Texture {
@@ -37,4 +40,51 @@ public record CheckerboardTexture(int width, int height, float tileSize, Vector3
 
         return pixels;
     }
+
+    /**
+     * Same pixels as {@link #getPixels()}, the tiles of the columns are computed once per region and every row only
+     * picks between the two colors.
+     */
+    @Override
+    public void writePixels(ByteBuffer dst, PixelFormat format, Region region) {
+        Pixels.checkSize(dst, format, region);
+
+        int[] colors = {Pixels.rgba(color1), Pixels.rgba(color0)};
+        int[] columnTiles = new int[region.width()];
+        for (int x = 0; x < columnTiles.length; x++)
+            columnTiles[x] = (int) ((float) (region.x() + x) / tileSize);
+
+        int[] row = new int[region.width()];
+        IntBuffer rows = Pixels.rgbaView(dst);
+        for (int y = 0; y < region.height(); y++) {
+            int rowTile = (int) ((float) (region.y() + y) / tileSize);
+            for (int x = 0; x < row.length; x++)
+                row[x] = colors[(columnTiles[x] + rowTile) & 1];
+            rows.put(y * row.length, row);
+        }
+    }
+
+    @Override
+    public boolean writesTiles() {
+        return true;
+    }
+
+    /**
+     * The checkerboard of {@link #getPixels()}, box filtered over the fragment by integrating the pattern analytically,
+     * so it neither aliases nor needs mipmaps.
+     */
+    @Override
+    public String glsl() {
+        return """
+                vec4 textureColor(vec2 st) {
+                    // in tiles, the pattern is the product of two square waves of period two
+                    vec2 p = st * vec2(%s, %s) / %s;
+                    vec2 w = fwidth(p) + 1e-4;
+                    // the square waves, +1 on even and -1 on odd tiles, averaged over [p - w / 2, p + w / 2]
+                    vec2 i = 2.0 * (abs(fract((p - 0.5 * w) * 0.5) - 0.5) - abs(fract((p + 0.5 * w) * 0.5) - 0.5)) / w;
+                    return vec4(mix(vec3(%s, %s, %s), vec3(%s, %s, %s), 0.5 - 0.5 * i.x * i.y), 1.0);
+                }
+                """.formatted((float) width, (float) height, tileSize,
+                color1.x(), color1.y(), color1.z(), color0.x(), color0.y(), color0.z());
+    }
 }
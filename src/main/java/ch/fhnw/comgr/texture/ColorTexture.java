@@ -3,6 +3,10 @@ package ch.fhnw.comgr.texture;
 import ch.fhnw.comgr.vector.Vector2;
 import ch.fhnw.comgr.vector.Vector3;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
 public record ColorTexture(Vector3 color) implements Texture {
     @Override
     public Vector3 getColor(Vector2 position) {
@@ -23,4 +27,25 @@ public record ColorTexture(Vector3 color) implements Texture {
     public int[] getPixels() {
         return new int[0];
     }
+
+    @Override
+    public void writePixels(ByteBuffer dst, PixelFormat format, Region region) {
+        Pixels.checkSize(dst, format, region);
+
+        int[] row = new int[region.width()];
+        Arrays.fill(row, Pixels.rgba(color));
+        IntBuffer rows = Pixels.rgbaView(dst);
+        for (int y = 0; y < region.height(); y++)
+            rows.put(y * row.length, row);
+    }
+
+    @Override
+    public boolean writesTiles() {
+        return true;
+    }
+
+    @Override
+    public String glsl() {
+        return "vec4 textureColor(vec2 st) { return vec4(%s, %s, %s, 1.0); }".formatted(color.x(), color.y(), color.z());
+    }
 }
@@ -0,0 +1,266 @@
+package ch.fhnw.comgr.texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Block compressed texture with its whole mip chain, down to 1x1, loaded from a binary cache file next to the build
+ * output. The first load builds the mip levels and encodes them with {@link BlockEncoder} in parallel bands on the
+ * common pool, every later load of the same pixels just maps the cache file and slices the levels out of it. The
+ * levels can be handed to glCompressedTexImage2D as they are.
+ * <p>
+ * The cache is keyed by the SHA-256 of the pixels, their size and whether they're sRGB, so it doesn't matter where
+ * the pixels came from. Opaque pixels are encoded as {@link Format#BC1}, others as {@link Format#BC3}.
+ */
+public record CompressedTexture(Format format, int width, int height, List<ByteBuffer> levels) {
+    /**
+     * The block formats, both with blocks of 4x4 pixels.
+     */
+    public enum Format {
+        /**
+         * 8 bytes per block, two RGB565 colors and 2 bit indices. 4 bits per pixel, no alpha.
+         */
+        BC1(8),
+        /**
+         * 16 bytes per block, an alpha block with 3 bit indices followed by a BC1 color block. 8 bits per pixel.
+         */
+        BC3(16);
+
+        private final int blockSize;
+
+        Format(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        public int blockSize() {
+            return blockSize;
+        }
+
+        /**
+         * Bytes of a level of the size.
+         */
+        public int levelSize(int width, int height) {
+            return ((width + 3) / 4) * ((height + 3) / 4) * blockSize;
+        }
+    }
+
+    public static final Path CACHE_DIRECTORY = Path.of(System.getProperty("comgr.textureCache", "build/texture-cache"));
+
+    private static final int MAGIC = 0x43544558; // "CTEX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+    // bands with fewer blocks than this aren't worth a task
+    private static final int MIN_BAND_BLOCKS = 1 << 12;
+
+    /**
+     * Whether the pixels had alpha below one, the colors are premultiplied then and need blending.
+     */
+    public boolean transparent() {
+        return format == Format.BC3;
+    }
+
+    /**
+     * Compresses the RGBA8 pixels, tightly packed from position 0 of the buffer. For sRGB pixels the mip levels are
+     * filtered in linear space. The pixels are expected to be premultiplied like {@link PixelFormat#RGBA8}.
+     */
+    public static CompressedTexture load(ByteBuffer rgbaPixels, int width, int height, boolean srgb) {
+        byte[] hash = hash(rgbaPixels, width, height, srgb);
+        Path cacheFile = CACHE_DIRECTORY.resolve(HexFormat.of().formatHex(hash, 0, 16) + ".bcn");
+
+        try {
+            if (Files.exists(cacheFile)) {
+                CompressedTexture texture = read(cacheFile, width, height);
+                if (texture != null)
+                    return texture;
+            }
+
+            write(cacheFile, rgbaPixels, width, height, srgb);
+
+            return read(cacheFile, width, height);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Maps the cache file, returns null if it was written by another version or doesn't fit the size.
+     */
+    private static CompressedTexture read(Path cacheFile, int width, int height) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+        }
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            return null;
+
+        int formatOrdinal = buffer.getInt();
+        if (formatOrdinal < 0 || formatOrdinal >= Format.values().length || buffer.getInt() != width || buffer.getInt() != height)
+            return null;
+        Format format = Format.values()[formatOrdinal];
+
+        int levelCount = buffer.getInt();
+        if (levelCount != levelCount(width, height) || buffer.remaining() != dataSize(format, width, height))
+            return null;
+
+        List<ByteBuffer> levels = new ArrayList<>(levelCount);
+        for (int level = 0; level < levelCount; level++) {
+            int size = format.levelSize(Math.max(1, width >> level), Math.max(1, height >> level));
+            levels.add(buffer.slice(buffer.position(), size));
+            buffer.position(buffer.position() + size);
+        }
+
+        return new CompressedTexture(format, width, height, List.copyOf(levels));
+    }
+
+    private static void write(Path cacheFile, ByteBuffer rgbaPixels, int width, int height, boolean srgb) throws IOException {
+        Format format = opaque(rgbaPixels, width * height) ? Format.BC1 : Format.BC3;
+        int levelCount = levelCount(width, height);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + dataSize(format, width, height)).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(format.ordinal());
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(levelCount);
+
+        ByteBuffer pixels = rgbaPixels;
+        for (int level = 0; level < levelCount; level++) {
+            int levelWidth = Math.max(1, width >> level);
+            int levelHeight = Math.max(1, height >> level);
+            if (level > 0)
+                pixels = downsample(pixels, Math.max(1, width >> (level - 1)), Math.max(1, height >> (level - 1)), levelWidth, levelHeight, srgb);
+
+            encode(pixels, levelWidth, levelHeight, format, buffer.slice(buffer.position(), format.levelSize(levelWidth, levelHeight)));
+            buffer.position(buffer.position() + format.levelSize(levelWidth, levelHeight));
+        }
+        buffer.rewind();
+
+        // write to a temporary file first, so a crash never leaves a half written cache behind
+        Files.createDirectories(cacheFile.getParent());
+        Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Encodes a level, every band of block rows with its own encoder.
+     */
+    private static void encode(ByteBuffer pixels, int width, int height, Format format, ByteBuffer dst) {
+        forEachBand((height + 3) / 4, (width + 3) / 4,
+                (from, to) -> new BlockEncoder().encode(pixels, width, height, format, dst, from, to));
+    }
+
+    /**
+     * The next mip level, every pixel the average of up to 2x2 pixels of the level above. Colors of sRGB pixels are
+     * averaged in linear space, alpha always is.
+     */
+    private static ByteBuffer downsample(ByteBuffer pixels, int width, int height, int newWidth, int newHeight, boolean srgb) {
+        ByteBuffer result = ByteBuffer.allocate(newWidth * newHeight * 4);
+        forEachBand(newHeight, newWidth / 16, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+                for (int x = 0; x < newWidth; x++) {
+                    int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+                    int p00 = (y0 * width + x0) * 4, p01 = (y0 * width + x1) * 4, p10 = (y1 * width + x0) * 4, p11 = (y1 * width + x1) * 4;
+                    int target = (y * newWidth + x) * 4;
+
+                    for (int channel = 0; channel < 3; channel++) {
+                        if (srgb) {
+                            float linear = Srgb.toLinear(pixels.get(p00 + channel)) + Srgb.toLinear(pixels.get(p01 + channel))
+                                    + Srgb.toLinear(pixels.get(p10 + channel)) + Srgb.toLinear(pixels.get(p11 + channel));
+                            result.put(target + channel, Srgb.fromLinear(linear / 4));
+                        } else {
+                            result.put(target + channel, (byte) average(pixels, p00 + channel, p01 + channel, p10 + channel, p11 + channel));
+                        }
+                    }
+                    result.put(target + 3, (byte) average(pixels, p00 + 3, p01 + 3, p10 + 3, p11 + 3));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the action for bands of the rows in parallel on the common pool, or for all rows at once if there's too
+     * little work for more than one band.
+     *
+     * @param rowCost work per row, in blocks
+     */
+    private static void forEachBand(int rows, int rowCost, BandAction action) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long bandsWorthATask = (long) rows * Math.max(1, rowCost) / MIN_BAND_BLOCKS;
+        int bandCount = (int) Math.max(1, Math.min(Math.min(pool.getParallelism() * 4, rows), bandsWorthATask));
+        if (bandCount == 1) {
+            action.run(0, rows);
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            int from = (int) ((long) rows * i / bandCount);
+            int to = (int) ((long) rows * (i + 1) / bandCount);
+            tasks[i] = pool.submit(() -> action.run(from, to));
+        }
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+    }
+
+    private interface BandAction {
+        void run(int fromRow, int toRow);
+    }
+
+    private static int average(ByteBuffer pixels, int a, int b, int c, int d) {
+        return ((pixels.get(a) & 0xff) + (pixels.get(b) & 0xff) + (pixels.get(c) & 0xff) + (pixels.get(d) & 0xff) + 2) / 4;
+    }
+
+    private static boolean opaque(ByteBuffer rgbaPixels, int pixelCount) {
+        for (int i = 0; i < pixelCount; i++) {
+            if (rgbaPixels.get(i * 4 + 3) != (byte) 0xff)
+                return false;
+        }
+        return true;
+    }
+
+    private static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    private static int dataSize(Format format, int width, int height) {
+        int size = 0;
+        for (int level = 0; level < levelCount(width, height); level++)
+            size += format.levelSize(Math.max(1, width >> level), Math.max(1, height >> level));
+        return size;
+    }
+
+    private static byte[] hash(ByteBuffer rgbaPixels, int width, int height, boolean srgb) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer key = ByteBuffer.allocate(4 * Integer.BYTES);
+            key.putInt(VERSION).putInt(width).putInt(height).putInt(srgb ? 1 : 0).flip();
+            digest.update(key);
+            digest.update(rgbaPixels.slice(0, width * height * 4));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -8,11 +8,21 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import static ch.fhnw.comgr.vector.Vector3.BYTE_MAX_VALUE;
 import static ch.fhnw.comgr.vector.Vector3.GAMMA;
 
 public record ImageTexture(BufferedImage image, float multiplier, float offset) implements Texture {
+    // the gamma curve of getPixels for every 8 bit value
+    private static final float[] TO_LINEAR = new float[BYTE_MAX_VALUE + 1];
+
+    static {
+        for (int i = 0; i < TO_LINEAR.length; i++)
+            TO_LINEAR[i] = (float) Math.pow(i / (float) BYTE_MAX_VALUE, GAMMA);
+    }
+
     public static ImageTexture ofResource(String resourcePath, float multiplier, float offset) {
         try (InputStream imageStream = ImageTexture.class.getResourceAsStream(resourcePath)) {
             return new ImageTexture(ImageIO.read(imageStream), multiplier, offset);
@@ -108,4 +118,35 @@ public record ImageTexture(BufferedImage image, float multiplier, float offset)
 
         return pixels;
     }
+
+    /**
+     * Same pixels as {@link #getPixels()}, but the region is read with one getRGB call per row and the gamma curve
+     * comes from a table.
+     */
+    @Override
+    public void writePixels(ByteBuffer dst, PixelFormat format, Region region) {
+        Pixels.checkSize(dst, format, region);
+
+        int[] row = new int[region.width()];
+        IntBuffer rows = Pixels.rgbaView(dst);
+        for (int y = 0; y < region.height(); y++) {
+            image.getRGB(region.x(), region.y() + y, row.length, 1, row, 0, row.length);
+            for (int x = 0; x < row.length; x++) {
+                int srgba = row[x];
+
+                float alpha = (srgba >> 24 & BYTE_MAX_VALUE) / (float) BYTE_MAX_VALUE;
+                float red = TO_LINEAR[srgba >> 16 & BYTE_MAX_VALUE] * alpha;
+                float green = TO_LINEAR[srgba >> 8 & BYTE_MAX_VALUE] * alpha;
+                float blue = TO_LINEAR[srgba & BYTE_MAX_VALUE] * alpha;
+
+                row[x] = ((int) (alpha * BYTE_MAX_VALUE) << 24) + ((int) (red * BYTE_MAX_VALUE)) + ((int) (green * BYTE_MAX_VALUE) << 8) + ((int) (blue * BYTE_MAX_VALUE) << 16);
+            }
+            rows.put(y * row.length, row);
+        }
+    }
+
+    @Override
+    public boolean writesTiles() {
+        return true;
+    }
 }
@@ -0,0 +1,25 @@
+package ch.fhnw.comgr.texture;
+
+/**
+ * Layout of the pixels {@link Texture#writePixels} writes.
+ */
+public enum PixelFormat {
+    /**
+     * Bytes R, G, B, A, linear and premultiplied like {@link Texture#getPixels()}, for GL_RGBA8 with GL_RGBA and
+     * GL_UNSIGNED_BYTE.
+     */
+    RGBA8(4);
+
+    private final int pixelSize;
+
+    PixelFormat(int pixelSize) {
+        this.pixelSize = pixelSize;
+    }
+
+    /**
+     * Bytes per pixel.
+     */
+    public int pixelSize() {
+        return pixelSize;
+    }
+}
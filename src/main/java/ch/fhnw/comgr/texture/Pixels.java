@@ -0,0 +1,82 @@
+package ch.fhnw.comgr.texture;
+
+import ch.fhnw.comgr.vector.Vector3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static ch.fhnw.comgr.vector.Vector3.BYTE_MAX_VALUE;
+
+/**
+ * Writes whole textures with {@link Texture#writePixels}. Textures that {@link Texture#writesTiles() write tiles} are
+ * split into bands of rows that are written in parallel, each into its own slice of the buffer.
+ */
+public final class Pixels {
+    // bands smaller than this aren't worth a task
+    private static final int MIN_BAND_PIXELS = 1 << 16;
+
+    private Pixels() {
+    }
+
+    public static void write(Texture texture, ByteBuffer dst, PixelFormat format) {
+        write(texture, dst, format, null);
+    }
+
+    public static void writeParallel(Texture texture, ByteBuffer dst, PixelFormat format) {
+        write(texture, dst, format, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Writes all pixels of the texture to dst starting at its position, in bands on the pool. Without a pool, or for
+     * textures that don't write tiles, they're written by one call on the calling thread. The result is the same either
+     * way.
+     */
+    public static void write(Texture texture, ByteBuffer dst, PixelFormat format, ForkJoinPool pool) {
+        Region whole = Region.of(texture);
+        checkSize(dst, format, whole);
+
+        int width = whole.width();
+        int height = whole.height();
+        int bandCount = pool == null || !texture.writesTiles() ? 1
+                : Math.min(pool.getParallelism() * 4, Math.max(1, whole.pixelCount() / MIN_BAND_PIXELS));
+        if (bandCount == 1) {
+            texture.writePixels(dst, format, whole);
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            int y = (int) ((long) height * i / bandCount);
+            int bandHeight = (int) ((long) height * (i + 1) / bandCount) - y;
+            Region band = new Region(0, y, width, bandHeight);
+            ByteBuffer slice = dst.slice(dst.position() + y * width * format.pixelSize(), band.pixelCount() * format.pixelSize());
+            tasks[i] = pool.submit(() -> texture.writePixels(slice, format, band));
+        }
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+    }
+
+    /**
+     * Opaque {@link PixelFormat#RGBA8} pixel of the linear color, as an int in little endian order.
+     */
+    static int rgba(Vector3 color) {
+        return (BYTE_MAX_VALUE << 24) + ((int) (color.x() * BYTE_MAX_VALUE)) + ((int) (color.y() * BYTE_MAX_VALUE) << 8) + ((int) (color.z() * BYTE_MAX_VALUE) << 16);
+    }
+
+    /**
+     * The ints of dst from its position on, in the byte order of {@link PixelFormat#RGBA8} pixels packed like
+     * {@link #rgba}.
+     */
+    static IntBuffer rgbaView(ByteBuffer dst) {
+        return dst.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    static void checkSize(ByteBuffer dst, PixelFormat format, Region region) {
+        long required = (long) region.pixelCount() * format.pixelSize();
+        if (dst.remaining() < required)
+            throw new IllegalArgumentException("expected at least " + required + " bytes, got " + dst.remaining());
+    }
+}
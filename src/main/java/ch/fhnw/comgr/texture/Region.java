@@ -0,0 +1,14 @@
+package ch.fhnw.comgr.texture;
+
+/**
+ * A rectangle of pixels of a texture, x to the right and y down from the top left pixel.
+ */
+public record Region(int x, int y, int width, int height) {
+    public static Region of(Texture texture) {
+        return new Region(0, 0, texture.getWidth(), texture.getHeight());
+    }
+
+    public int pixelCount() {
+        return width * height;
+    }
+}
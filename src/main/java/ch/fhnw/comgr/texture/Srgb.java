@@ -0,0 +1,40 @@
+package ch.fhnw.comgr.texture;
+
+/**
+ * The sRGB transfer curve as used by GL for sRGB textures, through tables: 8 bit sRGB values to linear and linear
+ * values, quantized to 4096 steps, back to 8 bit sRGB.
+ */
+public final class Srgb {
+    private static final int LINEAR_STEPS = 4096;
+    private static final float[] TO_LINEAR = new float[256];
+    private static final byte[] FROM_LINEAR = new byte[LINEAR_STEPS];
+
+    static {
+        for (int i = 0; i < TO_LINEAR.length; i++) {
+            double srgb = i / 255.0;
+            TO_LINEAR[i] = (float) (srgb <= 0.04045 ? srgb / 12.92 : Math.pow((srgb + 0.055) / 1.055, 2.4));
+        }
+        for (int i = 0; i < FROM_LINEAR.length; i++) {
+            double linear = i / (double) (LINEAR_STEPS - 1);
+            double srgb = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+            FROM_LINEAR[i] = (byte) Math.round(srgb * 255);
+        }
+    }
+
+    private Srgb() {
+    }
+
+    /**
+     * The linear value of the 8 bit sRGB value, the byte is taken as unsigned.
+     */
+    public static float toLinear(byte srgb) {
+        return TO_LINEAR[srgb & 0xff];
+    }
+
+    /**
+     * The 8 bit sRGB value of the linear value in [0, 1].
+     */
+    public static byte fromLinear(float linear) {
+        return FROM_LINEAR[(int) (linear * (LINEAR_STEPS - 1) + 0.5f)];
+    }
+}
@@ -3,6 +3,9 @@ package ch.fhnw.comgr.texture;
 import ch.fhnw.comgr.vector.Vector2;
 import ch.fhnw.comgr.vector.Vector3;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
 public interface Texture {
     Vector3 getColor(Vector2 position);
 
@@ -14,4 +17,37 @@ public interface Texture {
     }
 
     int[] getPixels();
+
+    /**
+     * Writes the pixels of the region, row by row from the top and without padding, to dst starting at its position.
+     * The position of dst isn't changed, so it may be a direct buffer or a view of mapped or other off-heap memory.
+     * <p>
+     * The default implementation bakes the whole texture with {@link #getPixels()} for every call and copies the
+     * region, textures that can compute just the region override it and {@link #writesTiles()}.
+     */
+    default void writePixels(ByteBuffer dst, PixelFormat format, Region region) {
+        Pixels.checkSize(dst, format, region);
+
+        int[] pixels = getPixels();
+        IntBuffer rows = Pixels.rgbaView(dst);
+        for (int row = 0; row < region.height(); row++)
+            rows.put(row * region.width(), pixels, (region.y() + row) * getWidth() + region.x(), region.width());
+    }
+
+    /**
+     * Whether {@link #writePixels} only does the work for the region, so the texture can be written in tiles in
+     * parallel, see {@link Pixels}.
+     */
+    default boolean writesTiles() {
+        return false;
+    }
+
+    /**
+     * GLSL source defining {@code vec4 textureColor(vec2 st)}, the color at the texture coordinates filtered over the
+     * footprint of the fragment, for textures that can be evaluated by the fragment shader instead of being baked with
+     * {@link #getPixels()}. Null if the texture has to be baked.
+     */
+    default String glsl() {
+        return null;
+    }
 }
@@ -0,0 +1,83 @@
+package ch.fhnw.comgr.vector;
+
+import ch.fhnw.comgr.matrix.Matrix4x4;
+
+/**
+ * Bulk versions of the {@link Vector3} operations for whole {@link Vector3Array}s, e.g. all positions of a mesh.
+ * <p>
+ * They use the Vector API if the jdk.incubator.vector module is available (run with
+ * {@code --add-modules jdk.incubator.vector}) and plain loops otherwise, {@code -Dcomgr.simd=false} forces the plain
+ * loops. Both give the same results as the per-record methods. The destination may be one of the inputs.
+ */
+public final class BatchMath {
+    /**
+     * Vectors shorter than this are left as they are by {@link #normalize}, like {@link Vector3#normalize(Vector3)}.
+     */
+    public static final float MIN_LENGTH = 1e-6f;
+
+    private static final BatchOps OPS = createOps();
+
+    private BatchMath() {
+    }
+
+    /**
+     * Whether the operations run on the Vector API.
+     */
+    public static boolean isSimd() {
+        return !(OPS instanceof ScalarBatchOps);
+    }
+
+    /**
+     * Same as {@link Vector3#transform} for every vector.
+     */
+    public static void transformPositions(Matrix4x4 m, Vector3Array src, Vector3Array dest) {
+        checkSize(dest.size(), src.size());
+        OPS.transformPositions(m, src, dest, 0, src.size());
+    }
+
+    /**
+     * Same as {@link Vector3#transformNormal} for every vector, the translation is ignored.
+     */
+    public static void transformNormals(Matrix4x4 m, Vector3Array src, Vector3Array dest) {
+        checkSize(dest.size(), src.size());
+        OPS.transformNormals(m, src, dest, 0, src.size());
+    }
+
+    public static void dot(Vector3Array a, Vector3Array b, float[] dest) {
+        checkSize(b.size(), a.size());
+        checkSize(dest.length, a.size());
+        OPS.dot(a, b, dest, 0, a.size());
+    }
+
+    public static void cross(Vector3Array a, Vector3Array b, Vector3Array dest) {
+        checkSize(b.size(), a.size());
+        checkSize(dest.size(), a.size());
+        OPS.cross(a, b, dest, 0, a.size());
+    }
+
+    public static void normalize(Vector3Array src, Vector3Array dest) {
+        checkSize(dest.size(), src.size());
+        OPS.normalize(src, dest, 0, src.size());
+    }
+
+    private static void checkSize(int size, int required) {
+        if (size < required)
+            throw new IllegalArgumentException("expected at least " + required + " elements, got " + size);
+    }
+
+    private static BatchOps createOps() {
+        if (!Boolean.parseBoolean(System.getProperty("comgr.simd", "true")))
+            return new ScalarBatchOps();
+
+        // SimdBatchOps doesn't link without the incubator module, so don't touch it unless the module is there
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return new ScalarBatchOps();
+
+        // compiled in the simd source set, so the main sources build without the incubator module
+        try {
+            return (BatchOps) Class.forName("ch.fhnw.comgr.vector.SimdBatchOps").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return new ScalarBatchOps();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ch.fhnw.comgr.vector;
+
+import ch.fhnw.comgr.matrix.Matrix4x4;
+
+/**
+ * Implementation behind {@link BatchMath}, working on the elements from (inclusive) to (exclusive). The sizes are
+ * checked by the caller, dest may be one of the inputs.
+ */
+interface BatchOps {
+    void transformPositions(Matrix4x4 m, Vector3Array src, Vector3Array dest, int from, int to);
+
+    void transformNormals(Matrix4x4 m, Vector3Array src, Vector3Array dest, int from, int to);
+
+    void dot(Vector3Array a, Vector3Array b, float[] dest, int from, int to);
+
+    void cross(Vector3Array a, Vector3Array b, Vector3Array dest, int from, int to);
+
+    void normalize(Vector3Array src, Vector3Array dest, int from, int to);
+}
@@ -0,0 +1,64 @@
+package ch.fhnw.comgr.vector;
+
+import ch.fhnw.comgr.matrix.Matrix4x4;
+
+/**
+ * Plain loops, used when the Vector API isn't available and for the elements that don't fill a whole SIMD vector.
+ * Same formulas as the methods of {@link Vector3}.
+ */
+final class ScalarBatchOps implements BatchOps {
+    @Override
+    public void transformPositions(Matrix4x4 m, Vector3Array src, Vector3Array dest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float x = src.x()[i];
+            float y = src.y()[i];
+            float z = src.z()[i];
+            dest.x()[i] = x * m.m11() + y * m.m21() + z * m.m31() + m.m41();
+            dest.y()[i] = x * m.m12() + y * m.m22() + z * m.m32() + m.m42();
+            dest.z()[i] = x * m.m13() + y * m.m23() + z * m.m33() + m.m43();
+        }
+    }
+
+    @Override
+    public void transformNormals(Matrix4x4 m, Vector3Array src, Vector3Array dest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float x = src.x()[i];
+            float y = src.y()[i];
+            float z = src.z()[i];
+            dest.x()[i] = x * m.m11() + y * m.m21() + z * m.m31();
+            dest.y()[i] = x * m.m12() + y * m.m22() + z * m.m32();
+            dest.z()[i] = x * m.m13() + y * m.m23() + z * m.m33();
+        }
+    }
+
+    @Override
+    public void dot(Vector3Array a, Vector3Array b, float[] dest, int from, int to) {
+        for (int i = from; i < to; i++)
+            dest[i] = a.x()[i] * b.x()[i] + a.y()[i] * b.y()[i] + a.z()[i] * b.z()[i];
+    }
+
+    @Override
+    public void cross(Vector3Array a, Vector3Array b, Vector3Array dest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float ax = a.x()[i], ay = a.y()[i], az = a.z()[i];
+            float bx = b.x()[i], by = b.y()[i], bz = b.z()[i];
+            dest.x()[i] = ay * bz - az * by;
+            dest.y()[i] = az * bx - ax * bz;
+            dest.z()[i] = ax * by - ay * bx;
+        }
+    }
+
+    @Override
+    public void normalize(Vector3Array src, Vector3Array dest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float x = src.x()[i];
+            float y = src.y()[i];
+            float z = src.z()[i];
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            float scale = length < BatchMath.MIN_LENGTH ? 1 : 1 / length;
+            dest.x()[i] = x * scale;
+            dest.y()[i] = y * scale;
+            dest.z()[i] = z * scale;
+        }
+    }
+}
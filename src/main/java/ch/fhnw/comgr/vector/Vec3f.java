@@ -0,0 +1,103 @@
+package ch.fhnw.comgr.vector;
+
+import ch.fhnw.comgr.matrix.Mat4f;
+
+/**
+ * Mutable counterpart of {@link Vector3} for code that runs every frame. All operations work in place and return this
+ * vector for chaining, nothing allocates.
+ */
+public final class Vec3f {
+    public float x;
+    public float y;
+    public float z;
+
+    public Vec3f() {
+    }
+
+    public Vec3f(float x, float y, float z) {
+        set(x, y, z);
+    }
+
+    public Vec3f(Vector3 v) {
+        set(v);
+    }
+
+    public Vec3f set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vec3f set(Vector3 v) {
+        return set(v.x(), v.y(), v.z());
+    }
+
+    public Vec3f set(Vec3f v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    public Vector3 toVector3() {
+        return new Vector3(x, y, z);
+    }
+
+    public Vec3f add(Vec3f v) {
+        return set(x + v.x, y + v.y, z + v.z);
+    }
+
+    public Vec3f sub(Vec3f v) {
+        return set(x - v.x, y - v.y, z - v.z);
+    }
+
+    public Vec3f mul(float s) {
+        return set(x * s, y * s, z * s);
+    }
+
+    public float dot(Vec3f v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    /**
+     * Sets this vector to this x v.
+     */
+    public Vec3f cross(Vec3f v) {
+        return set(y * v.z - z * v.y, z * v.x - x * v.z, x * v.y - y * v.x);
+    }
+
+    public float lengthSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    public float length() {
+        return (float) Math.sqrt(lengthSquared());
+    }
+
+    public Vec3f normalize() {
+        return mul(1 / length());
+    }
+
+    /**
+     * Transforms this position by the matrix, like {@link Vector3#transform}.
+     */
+    public Vec3f transformPosition(Mat4f m) {
+        return set(
+                x * m.m11 + y * m.m21 + z * m.m31 + m.m41,
+                x * m.m12 + y * m.m22 + z * m.m32 + m.m42,
+                x * m.m13 + y * m.m23 + z * m.m33 + m.m43);
+    }
+
+    /**
+     * Transforms this direction by the matrix, like {@link Vector3#transformNormal}.
+     */
+    public Vec3f transformDirection(Mat4f m) {
+        return set(
+                x * m.m11 + y * m.m21 + z * m.m31,
+                x * m.m12 + y * m.m22 + z * m.m32,
+                x * m.m13 + y * m.m23 + z * m.m33);
+    }
+
+    @Override
+    public String toString() {
+        return "Vec3f[x=" + x + ", y=" + y + ", z=" + z + "]";
+    }
+}
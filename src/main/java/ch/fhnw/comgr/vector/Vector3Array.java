@@ -0,0 +1,54 @@
+package ch.fhnw.comgr.vector;
+
+/**
+ * Vectors in structure-of-arrays layout, one array per component, for the bulk operations of {@link BatchMath}.
+ */
+public record Vector3Array(float[] x, float[] y, float[] z) {
+    public Vector3Array {
+        if (x.length != y.length || x.length != z.length)
+            throw new IllegalArgumentException("component arrays differ in length");
+    }
+
+    public static Vector3Array create(int size) {
+        return new Vector3Array(new float[size], new float[size], new float[size]);
+    }
+
+    /**
+     * Copies three consecutive floats at offset of every element of an interleaved buffer, for example the positions
+     * of a vertex buffer.
+     */
+    public static Vector3Array of(float[] interleaved, int stride, int offset) {
+        Vector3Array array = create(interleaved.length / stride);
+        for (int i = 0, j = offset; i < array.size(); i++, j += stride) {
+            array.x[i] = interleaved[j];
+            array.y[i] = interleaved[j + 1];
+            array.z[i] = interleaved[j + 2];
+        }
+        return array;
+    }
+
+    /**
+     * Writes the vectors back into an interleaved buffer, the inverse of {@link #of}.
+     */
+    public void copyTo(float[] interleaved, int stride, int offset) {
+        for (int i = 0, j = offset; i < size(); i++, j += stride) {
+            interleaved[j] = x[i];
+            interleaved[j + 1] = y[i];
+            interleaved[j + 2] = z[i];
+        }
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public Vector3 get(int i) {
+        return new Vector3(x[i], y[i], z[i]);
+    }
+
+    public void set(int i, Vector3 v) {
+        x[i] = v.x();
+        y[i] = v.y();
+        z[i] = v.z();
+    }
+}
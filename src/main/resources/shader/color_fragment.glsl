@@ -2,9 +2,23 @@
 
 #version 400 core
 
+#ifdef MULTI_DRAW
+// the color of the object or its material, see vertex.glsl
+in vec3 instanceColor;
+#define color instanceColor
+#else
 uniform vec3 color;
-uniform vec3 lightDirection;
-uniform vec3 cameraDirection;
+#endif
+// per-frame data, see FrameUniforms
+layout(std140) uniform Frame {
+    mat4 viewMatrix;
+    mat4 projectionMatrix;
+    mat4 viewProjectionMatrix;
+    vec3 cameraPosition;
+    vec3 cameraDirection;
+    vec3 lightDirection;
+    float time;
+};
 
 out vec4 outColor;
 
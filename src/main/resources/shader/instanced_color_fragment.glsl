@@ -0,0 +1,35 @@
+// see https://www.khronos.org/opengl/wiki/Fragment_Shader
+
+#version 400 core
+
+uniform vec3 color;
+// per-frame data, see FrameUniforms
+layout(std140) uniform Frame {
+    mat4 viewMatrix;
+    mat4 projectionMatrix;
+    mat4 viewProjectionMatrix;
+    vec3 cameraPosition;
+    vec3 cameraDirection;
+    vec3 lightDirection;
+    float time;
+};
+
+out vec4 outColor;
+
+in vec2 st;
+in vec3 normal;
+in vec3 instanceColor;
+
+vec3 diffuse() {
+    return instanceColor * color * max(dot(normal, lightDirection), 0);
+}
+
+vec3 specular() {
+    vec3 r = reflect(lightDirection, normal);
+    return vec3(1, 1, 1) * pow(max(dot(r, cameraDirection), 0), 80);
+}
+
+void main()
+{
+    outColor = vec4(diffuse(), 1) + vec4(specular(), 1);
+}
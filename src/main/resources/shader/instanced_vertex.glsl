@@ -0,0 +1,36 @@
+// see https://www.khronos.org/opengl/wiki/Vertex_Shader
+
+#version 400 core
+
+// per-frame data, see FrameUniforms
+layout(std140) uniform Frame {
+    mat4 viewMatrix;
+    mat4 projectionMatrix;
+    mat4 viewProjectionMatrix;
+    vec3 cameraPosition;
+    vec3 cameraDirection;
+    vec3 lightDirection;
+    float time;
+};
+
+in vec3 inPos;
+
+in vec2 inSt;
+out vec2 st;
+
+in vec3 inNormal;
+out vec3 normal;
+
+// per instance, see VertexFormat.INSTANCE
+in mat4 inModel;
+in mat3 inNormalMatrix;
+in vec3 inColor;
+out vec3 instanceColor;
+
+void main()
+{
+    gl_Position = vec4(inPos, 1.0) * inModel * viewProjectionMatrix;
+    st = inSt;
+    normal = normalize(inNormal * inNormalMatrix * vec3(-1, 1, 1));
+    instanceColor = inColor;
+}
@@ -2,9 +2,25 @@
 
 #version 400 core
 
+// procedural textures define textureColor in the prelude, see ch.fhnw.comgr.texture.Texture#glsl
+#ifndef PROCEDURAL_TEXTURE
 uniform sampler2D imageTexture;
-uniform vec3 lightDirection;
-uniform vec3 cameraDirection;
+
+vec4 textureColor(vec2 st) {
+    return texture(imageTexture, st);
+}
+#endif
+
+// per-frame data, see FrameUniforms
+layout(std140) uniform Frame {
+    mat4 viewMatrix;
+    mat4 projectionMatrix;
+    mat4 viewProjectionMatrix;
+    vec3 cameraPosition;
+    vec3 cameraDirection;
+    vec3 lightDirection;
+    float time;
+};
 
 out vec4 outColor;
 
@@ -12,8 +28,7 @@ in vec2 st;
 in vec3 normal;
 
 vec4 diffuse() {
-    vec4 texColor = texture(imageTexture, st);
-    return texColor;
+    return textureColor(st);
 }
 
 void main()
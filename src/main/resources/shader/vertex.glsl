@@ -2,9 +2,33 @@
 
 #version 400 core
 
-uniform float inTime;
-uniform mat4 mvpMatrix;
-uniform mat3 normalMatrix;
+// per-frame data, see FrameUniforms
+layout(std140) uniform Frame {
+    mat4 viewMatrix;
+    mat4 projectionMatrix;
+    mat4 viewProjectionMatrix;
+    vec3 cameraPosition;
+    vec3 cameraDirection;
+    vec3 lightDirection;
+    float time;
+};
+
+#ifdef MULTI_DRAW
+// per object, from the base instance of the draw command, see VertexFormat.INSTANCE and RenderQueue
+in mat4 inModel;
+in mat3 inNormalMatrix;
+in vec3 inColor;
+out vec3 instanceColor;
+
+#define modelMatrix inModel
+#define normalMatrix inNormalMatrix
+#else
+// per-draw data, see RenderQueue
+layout(std140) uniform Object {
+    mat4 modelMatrix;
+    mat3 normalMatrix;
+};
+#endif
 
 in vec3 inPos;
 
@@ -16,7 +40,10 @@ out vec3 normal;
 
 void main()
 {
-    gl_Position = vec4(inPos, 1.0) * mvpMatrix;
+    gl_Position = vec4(inPos, 1.0) * modelMatrix * viewProjectionMatrix;
     st = inSt;
     normal = normalize(inNormal * normalMatrix * vec3(-1, 1, 1));
+#ifdef MULTI_DRAW
+    instanceColor = inColor;
+#endif
 }
@@ -0,0 +1,93 @@
+package ch.fhnw.comgr.vector;
+
+import ch.fhnw.comgr.matrix.Matrix4x4;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation, processes as many elements per instruction as the preferred species has lanes and leaves
+ * the remainder to {@link ScalarBatchOps}. The operations are evaluated in the same order as the scalar ones without
+ * fused multiply-add, so both give the same results. Only loaded when jdk.incubator.vector is in the boot layer.
+ */
+final class SimdBatchOps implements BatchOps {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final ScalarBatchOps tail = new ScalarBatchOps();
+
+    @Override
+    public void transformPositions(Matrix4x4 m, Vector3Array src, Vector3Array dest, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, src.x(), i);
+            FloatVector y = FloatVector.fromArray(SPECIES, src.y(), i);
+            FloatVector z = FloatVector.fromArray(SPECIES, src.z(), i);
+            x.mul(m.m11()).add(y.mul(m.m21())).add(z.mul(m.m31())).add(m.m41()).intoArray(dest.x(), i);
+            x.mul(m.m12()).add(y.mul(m.m22())).add(z.mul(m.m32())).add(m.m42()).intoArray(dest.y(), i);
+            x.mul(m.m13()).add(y.mul(m.m23())).add(z.mul(m.m33())).add(m.m43()).intoArray(dest.z(), i);
+        }
+        tail.transformPositions(m, src, dest, bound, to);
+    }
+
+    @Override
+    public void transformNormals(Matrix4x4 m, Vector3Array src, Vector3Array dest, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, src.x(), i);
+            FloatVector y = FloatVector.fromArray(SPECIES, src.y(), i);
+            FloatVector z = FloatVector.fromArray(SPECIES, src.z(), i);
+            x.mul(m.m11()).add(y.mul(m.m21())).add(z.mul(m.m31())).intoArray(dest.x(), i);
+            x.mul(m.m12()).add(y.mul(m.m22())).add(z.mul(m.m32())).intoArray(dest.y(), i);
+            x.mul(m.m13()).add(y.mul(m.m23())).add(z.mul(m.m33())).intoArray(dest.z(), i);
+        }
+        tail.transformNormals(m, src, dest, bound, to);
+    }
+
+    @Override
+    public void dot(Vector3Array a, Vector3Array b, float[] dest, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, a.x(), i).mul(FloatVector.fromArray(SPECIES, b.x(), i));
+            FloatVector y = FloatVector.fromArray(SPECIES, a.y(), i).mul(FloatVector.fromArray(SPECIES, b.y(), i));
+            FloatVector z = FloatVector.fromArray(SPECIES, a.z(), i).mul(FloatVector.fromArray(SPECIES, b.z(), i));
+            x.add(y).add(z).intoArray(dest, i);
+        }
+        tail.dot(a, b, dest, bound, to);
+    }
+
+    @Override
+    public void cross(Vector3Array a, Vector3Array b, Vector3Array dest, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector ax = FloatVector.fromArray(SPECIES, a.x(), i);
+            FloatVector ay = FloatVector.fromArray(SPECIES, a.y(), i);
+            FloatVector az = FloatVector.fromArray(SPECIES, a.z(), i);
+            FloatVector bx = FloatVector.fromArray(SPECIES, b.x(), i);
+            FloatVector by = FloatVector.fromArray(SPECIES, b.y(), i);
+            FloatVector bz = FloatVector.fromArray(SPECIES, b.z(), i);
+            ay.mul(bz).sub(az.mul(by)).intoArray(dest.x(), i);
+            az.mul(bx).sub(ax.mul(bz)).intoArray(dest.y(), i);
+            ax.mul(by).sub(ay.mul(bx)).intoArray(dest.z(), i);
+        }
+        tail.cross(a, b, dest, bound, to);
+    }
+
+    @Override
+    public void normalize(Vector3Array src, Vector3Array dest, int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, src.x(), i);
+            FloatVector y = FloatVector.fromArray(SPECIES, src.y(), i);
+            FloatVector z = FloatVector.fromArray(SPECIES, src.z(), i);
+            FloatVector length = x.mul(x).add(y.mul(y)).add(z.mul(z)).lanewise(VectorOperators.SQRT);
+            // vectors that are too short to normalize stay as they are
+            VectorMask<Float> tooShort = length.lt(BatchMath.MIN_LENGTH);
+            FloatVector scale = FloatVector.broadcast(SPECIES, 1).div(length).blend(1, tooShort);
+            x.mul(scale).intoArray(dest.x(), i);
+            y.mul(scale).intoArray(dest.y(), i);
+            z.mul(scale).intoArray(dest.z(), i);
+        }
+        tail.normalize(src, dest, bound, to);
+    }
+}